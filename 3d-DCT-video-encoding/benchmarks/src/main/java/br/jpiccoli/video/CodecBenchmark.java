@@ -0,0 +1,177 @@
+package br.jpiccoli.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.jpiccoli.video.dct.FastInverseDCT;
+import br.jpiccoli.video.dct.FloatInverseDCT;
+import br.jpiccoli.video.dct.TiledLayout;
+import br.jpiccoli.video.dct.Transform;
+
+/**
+ * End-to-end encoding and decoding of synthetic video, in frames per second.
+ *
+ * Each operation encodes or decodes one slab of {@link #CUBE_DEPTH} frames with the same pipeline
+ * used by {@link Encoder} and {@link Decoder}: block transform, quantization and scan followed by the
+ * entropy coding of the chunk (see {@link EntropyEncoder}), or the inverse steps. File input and output
+ * of raw frames is not included; the decoder reads its chunks from a container written during setup.
+ * The encodeStatic benchmark encodes a slab identical to the previous one, as in the static regions of a
+ * screen recording, whose cubes are not transformed (see {@link SlabEncoder}).
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+	private static final int CUBE_DEPTH = 8;
+	private static final int SLABS = 4;
+	
+	@Param({ "640x480", "1280x720", "1920x1080" })
+	public String resolution;
+	
+	@Param({ "fast", "float" })
+	public String transform;
+	
+	@Param({ "expgolomb", "runlength", "arithmetic" })
+	public String entropy;
+	
+	/**
+	 * Quality of the quantization table (see {@link QuantizationTable#forQuality(int, int, int, int)}).
+	 */
+	@Param({ "50" })
+	public int quality;
+	
+	private ContainerHeader header;
+	private byte[][] slabs;
+	private ExecutorService executor;
+	private SlabEncoder slabEncoder;
+	private ChunkEncoder chunkEncoder;
+	private File containerFile;
+	private ContainerReader container;
+	private ChunkDecoder chunkDecoder;
+	private Transform inverseDCT;
+	private double[] videoPixels;
+	private TiledLayout tiledLayout;
+	private byte[] outputData;
+	private int slab;
+	
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		
+		final int[] dimensions = SyntheticVideo.parseResolution(resolution);
+		header = new ContainerHeader();
+		header.width = dimensions[0];
+		header.height = dimensions[1];
+		header.cubeWidth = 8;
+		header.cubeHeight = 8;
+		header.cubeDepth = CUBE_DEPTH;
+		header.quantizer = (int) Math.round(QuantizationTable.getQuantizer(quality));
+		header.quantizationTable = QuantizationTable.forQuality(quality, header.cubeWidth, header.cubeHeight, header.cubeDepth);
+		header.frameCount = SLABS * CUBE_DEPTH;
+		if (entropy.equalsIgnoreCase("arithmetic")) {
+			header.entropyCoding = ContainerHeader.ARITHMETIC;
+		} else if (entropy.equalsIgnoreCase("runlength")) {
+			header.entropyCoding = ContainerHeader.RUN_LENGTH;
+		} else {
+			header.entropyCoding = ContainerHeader.EXP_GOLOMB;
+		}
+		
+		slabs = new byte[SLABS][];
+		for (int index = 0; index < SLABS; index++) {
+			slabs[index] = SyntheticVideo.frames(header.width, header.height, index * CUBE_DEPTH, CUBE_DEPTH);
+		}
+		
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		slabEncoder = new SlabEncoder(header, transform);
+		chunkEncoder = new ChunkEncoder(header);
+		
+		// Container used by the decoding benchmark
+		containerFile = File.createTempFile("benchmark", ".3dct");
+		try (ContainerWriter writer = new ContainerWriter(containerFile, header)) {
+			for (byte[] pixels : slabs) {
+				final byte[] chunkData = encode(pixels);
+				writer.writeChunk(chunkData, 0, chunkData.length);
+			}
+			writer.finish();
+		}
+		container = new ContainerReader(containerFile);
+		chunkDecoder = new ChunkDecoder(container);
+		videoPixels = new double[header.getFrameSize() * CUBE_DEPTH];
+		tiledLayout = new TiledLayout(header.width, header.height, header.cubeWidth, header.cubeHeight, CUBE_DEPTH);
+		outputData = new byte[header.getFrameSize()];
+		if (transform.equalsIgnoreCase("float")) {
+			inverseDCT = new FloatInverseDCT(chunkDecoder.getCoefficients(), videoPixels, header.width, header.height, header.cubeWidth, header.cubeHeight, CUBE_DEPTH);
+		} else {
+			inverseDCT = new FastInverseDCT(chunkDecoder.getCoefficients(), videoPixels, header.width, header.height, header.cubeWidth, header.cubeHeight, CUBE_DEPTH);
+		}
+		inverseDCT.setLayout(Transform.Layout.TILED);
+		inverseDCT.setDCOnlyBlocks(chunkDecoder.getDCOnlyBlocks());
+		
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		executor.shutdown();
+		chunkEncoder.close();
+		chunkDecoder.close();
+		container.close();
+		containerFile.delete();
+	}
+	
+	private byte[] encode(final byte[] pixels) throws InterruptedException, IOException {
+		slabEncoder.encode(pixels, null, chunkEncoder.getCoefficients(), null, executor);
+		return chunkEncoder.call();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CUBE_DEPTH)
+	public byte[] encode() throws InterruptedException, IOException {
+		slab = (slab + 1) % SLABS;
+		return encode(slabs[slab]);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CUBE_DEPTH)
+	public byte[] encodeStatic() throws InterruptedException, IOException {
+		slab = (slab + 1) % SLABS;
+		slabEncoder.encode(slabs[slab], slabs[slab], chunkEncoder.getCoefficients(), chunkEncoder.getCoefficients(), executor);
+		return chunkEncoder.call();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CUBE_DEPTH)
+	public byte[] decode() throws IOException, InterruptedException, ExecutionException {
+		slab = (slab + 1) % SLABS;
+		chunkDecoder.setChunk(slab);
+		chunkDecoder.call();
+		inverseDCT.run(executor);
+		for (int frame = 0; frame < CUBE_DEPTH; frame++) {
+			tiledLayout.toRaster(videoPixels, frame, outputData);
+		}
+		return outputData;
+	}
+	
+}
@@ -0,0 +1,187 @@
+package br.jpiccoli.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.jpiccoli.video.dct.FastInverseDCT;
+import br.jpiccoli.video.dct.TiledLayout;
+import br.jpiccoli.video.dct.Transform;
+
+/**
+ * End-to-end encoding and decoding of synthetic video with different cube dimensions.
+ *
+ * Each operation encodes or decodes one slab, whose depth is the depth of the cubes, with the same pipeline used
+ * by {@link Encoder} and {@link Decoder}. The "frames" secondary score is the number of frames encoded or decoded
+ * per second. The "megabytes" and "codedMegabytes" scores are the corresponding amounts of raw video (one byte
+ * per pixel) and of chunk data, so the ratio between both is the compression ratio of each configuration.
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CubeBenchmark {
+
+	/**
+	 * Number of frames of the synthetic video, which must be a multiple of every cube depth.
+	 */
+	private static final int FRAMES = 64;
+	
+	@Param({ "8x8x8", "8x8x16", "8x8x32", "4x4x4" })
+	public String cube;
+	
+	@Param({ "1280x720" })
+	public String resolution;
+	
+	@Param({ "expgolomb", "arithmetic" })
+	public String entropy;
+	
+	private ContainerHeader header;
+	private byte[][] slabs;
+	private int[] chunkSizes;
+	private ExecutorService executor;
+	private SlabEncoder slabEncoder;
+	private ChunkEncoder chunkEncoder;
+	private File containerFile;
+	private ContainerReader container;
+	private ChunkDecoder chunkDecoder;
+	private Transform inverseDCT;
+	private double[] videoPixels;
+	private TiledLayout tiledLayout;
+	private byte[] outputData;
+	private int slab;
+	
+	/**
+	 * Counts the frames and the raw and coded megabytes, reported by JMH as rates.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+
+		public double frames;
+		public double megabytes;
+		public double codedMegabytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			frames = 0;
+			megabytes = 0;
+			codedMegabytes = 0;
+		}
+		
+	}
+	
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		
+		final int[] dimensions = SyntheticVideo.parseResolution(resolution);
+		final String[] cubeDimensions = cube.split("x");
+		header = new ContainerHeader();
+		header.width = dimensions[0];
+		header.height = dimensions[1];
+		header.cubeWidth = Integer.parseInt(cubeDimensions[0]);
+		header.cubeHeight = Integer.parseInt(cubeDimensions[1]);
+		header.cubeDepth = Integer.parseInt(cubeDimensions[2]);
+		header.quantizer = 5;
+		header.frameCount = FRAMES;
+		if (entropy.equalsIgnoreCase("arithmetic")) {
+			header.entropyCoding = ContainerHeader.ARITHMETIC;
+		} else if (entropy.equalsIgnoreCase("runlength")) {
+			header.entropyCoding = ContainerHeader.RUN_LENGTH;
+		} else {
+			header.entropyCoding = ContainerHeader.EXP_GOLOMB;
+		}
+		
+		slabs = new byte[FRAMES / header.cubeDepth][];
+		for (int index = 0; index < slabs.length; index++) {
+			slabs[index] = SyntheticVideo.frames(header.width, header.height, index * header.cubeDepth, header.cubeDepth);
+		}
+		
+		executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		slabEncoder = new SlabEncoder(header, "fast");
+		chunkEncoder = new ChunkEncoder(header);
+		
+		// Container used by the decoding benchmark
+		chunkSizes = new int[slabs.length];
+		containerFile = File.createTempFile("benchmark", ".3dct");
+		try (ContainerWriter writer = new ContainerWriter(containerFile, header)) {
+			for (int index = 0; index < slabs.length; index++) {
+				final byte[] chunkData = encode(slabs[index]);
+				writer.writeChunk(chunkData, 0, chunkData.length);
+				chunkSizes[index] = chunkData.length;
+			}
+			writer.finish();
+		}
+		container = new ContainerReader(containerFile);
+		chunkDecoder = new ChunkDecoder(container);
+		videoPixels = new double[header.getFrameSize() * header.cubeDepth];
+		tiledLayout = new TiledLayout(header.width, header.height, header.cubeWidth, header.cubeHeight, header.cubeDepth);
+		outputData = new byte[header.getFrameSize()];
+		inverseDCT = new FastInverseDCT(chunkDecoder.getCoefficients(), videoPixels, header.width, header.height, header.cubeWidth, header.cubeHeight, header.cubeDepth);
+		inverseDCT.setLayout(Transform.Layout.TILED);
+		inverseDCT.setDCOnlyBlocks(chunkDecoder.getDCOnlyBlocks());
+		
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		executor.shutdown();
+		chunkEncoder.close();
+		chunkDecoder.close();
+		container.close();
+		containerFile.delete();
+	}
+	
+	private byte[] encode(final byte[] pixels) throws InterruptedException, IOException {
+		slabEncoder.encode(pixels, null, chunkEncoder.getCoefficients(), null, executor);
+		return chunkEncoder.call();
+	}
+	
+	private void count(final Counters counters) {
+		counters.frames += header.cubeDepth;
+		counters.megabytes += slabs[slab].length / 1e6;
+		counters.codedMegabytes += chunkSizes[slab] / 1e6;
+	}
+	
+	@Benchmark
+	public byte[] encode(final Counters counters) throws InterruptedException, IOException {
+		slab = (slab + 1) % slabs.length;
+		count(counters);
+		return encode(slabs[slab]);
+	}
+	
+	@Benchmark
+	public byte[] decode(final Counters counters) throws IOException, InterruptedException {
+		slab = (slab + 1) % slabs.length;
+		chunkDecoder.setChunk(slab);
+		chunkDecoder.call();
+		inverseDCT.run(executor);
+		for (int frame = 0; frame < header.cubeDepth; frame++) {
+			tiledLayout.toRaster(videoPixels, frame, outputData);
+		}
+		count(counters);
+		return outputData;
+	}
+	
+}
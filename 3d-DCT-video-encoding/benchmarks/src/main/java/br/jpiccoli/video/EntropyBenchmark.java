@@ -0,0 +1,138 @@
+package br.jpiccoli.video;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the entropy coders over the quantized coefficients of a slab of synthetic video.
+ *
+ * Each operation codes or decodes one chunk (a slab of {@link #CUBE_DEPTH} frames). The "megabytes"
+ * secondary score is the number of megabytes of raw video (one byte per pixel) coded or decoded per
+ * second, and the "codedMegabytes" score, the corresponding amount of chunk data, so the ratio between
+ * both is the compression ratio of each coder.
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EntropyBenchmark {
+
+	private static final int CUBE_DEPTH = 8;
+	
+	@Param({ "640x480", "1920x1080" })
+	public String resolution;
+	
+	@Param({ "expgolomb", "runlength", "arithmetic" })
+	public String entropy;
+	
+	private short[] coefficients;
+	private int[] cube;
+	private int cubesCount;
+	private byte[] chunkData;
+	private double slabMegabytes;
+	private double chunkMegabytes;
+	private EntropyEncoder encoder;
+	private EntropyDecoder decoder;
+	
+	/**
+	 * Counts the raw and coded megabytes, reported by JMH as rates.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Megabytes {
+
+		public double megabytes;
+		public double codedMegabytes;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+			codedMegabytes = 0;
+		}
+		
+	}
+	
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		
+		final int[] dimensions = SyntheticVideo.parseResolution(resolution);
+		final ContainerHeader header = new ContainerHeader();
+		header.width = dimensions[0];
+		header.height = dimensions[1];
+		header.cubeWidth = 8;
+		header.cubeHeight = 8;
+		header.cubeDepth = CUBE_DEPTH;
+		header.quantizer = 5;
+		header.frameCount = CUBE_DEPTH;
+		if (entropy.equalsIgnoreCase("arithmetic")) {
+			header.entropyCoding = ContainerHeader.ARITHMETIC;
+		} else if (entropy.equalsIgnoreCase("runlength")) {
+			header.entropyCoding = ContainerHeader.RUN_LENGTH;
+		} else {
+			header.entropyCoding = ContainerHeader.EXP_GOLOMB;
+		}
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			coefficients = new short[header.getFrameSize() * CUBE_DEPTH];
+			new SlabEncoder(header, "fast").encode(SyntheticVideo.frames(header.width, header.height, 0, CUBE_DEPTH), null, coefficients, null, executor);
+		} finally {
+			executor.shutdown();
+		}
+		
+		cube = new int[header.cubeWidth * header.cubeHeight * header.cubeDepth];
+		cubesCount = coefficients.length / cube.length;
+		encoder = EntropyEncoder.create(header);
+		decoder = EntropyDecoder.create(header);
+		chunkData = encoder.encode(coefficients);
+		slabMegabytes = coefficients.length / 1e6;
+		chunkMegabytes = chunkData.length / 1e6;
+		
+	}
+	
+	@TearDown
+	public void tearDown() {
+		encoder.close();
+		decoder.close();
+	}
+	
+	@Benchmark
+	public byte[] encode(final Megabytes megabytes) throws IOException {
+		megabytes.megabytes += slabMegabytes;
+		megabytes.codedMegabytes += chunkMegabytes;
+		return encoder.encode(coefficients);
+	}
+	
+	@Benchmark
+	public int[] decode(final Megabytes megabytes) throws IOException {
+		decoder.setInput(chunkData);
+		for (int index = 0; index < cubesCount; index++) {
+			decoder.readCube(cube);
+		}
+		megabytes.megabytes += slabMegabytes;
+		megabytes.codedMegabytes += chunkMegabytes;
+		return cube;
+	}
+	
+}
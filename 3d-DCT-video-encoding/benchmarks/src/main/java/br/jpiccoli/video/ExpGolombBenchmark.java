@@ -0,0 +1,147 @@
+package br.jpiccoli.video;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the Exp-Golomb writer and reader.
+ *
+ * The coded values follow the distribution of quantized DCT coefficients: most of them are zero and
+ * the magnitude of the others decays exponentially. The primary score is values per second; the
+ * "bits" secondary score is the number of coded bits per second.
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpGolombBenchmark {
+
+	private static final int VALUES_COUNT = 1 << 16;
+	
+	private int[] values;
+	private int[] decodedValues;
+	private byte[] buffer;
+	private byte[] codedData;
+	private int codedBits;
+	private ExpGolombWriter writer;
+	private ExpGolombReader reader;
+	
+	/**
+	 * Counts the coded bits, reported by JMH as a rate.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bits {
+
+		public long bits;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			bits = 0;
+		}
+		
+	}
+	
+	@Setup
+	public void setup() throws IOException {
+		final Random random = new Random(0);
+		values = new int[VALUES_COUNT];
+		for (int index = 0; index < VALUES_COUNT; index++) {
+			if (random.nextInt(4) != 0) {
+				values[index] = 0;
+			} else {
+				final int magnitude = 1 + (int) (-Math.log(1 - random.nextDouble()) * 4);
+				values[index] = random.nextBoolean() ? magnitude : -magnitude;
+			}
+		}
+		buffer = new byte[VALUES_COUNT * 4];
+		writer = new ExpGolombWriter();
+		writer.setOutput(buffer);
+		for (int value : values) {
+			writer.writeValue(value);
+		}
+		codedBits = writer.finish() * 8;
+		codedData = writer.getOutput().clone();
+		reader = new ExpGolombReader();
+		decodedValues = new int[VALUES_COUNT];
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(VALUES_COUNT)
+	public int write(final Bits bits) throws IOException {
+		writer.reset();
+		for (int index = 0; index < VALUES_COUNT; index++) {
+			writer.writeValue(values[index]);
+		}
+		bits.bits += codedBits;
+		return writer.finish();
+	}
+	
+	/**
+	 * Same as {@link #write(Bits)}, writing the runs of zeroes at once, as done by the chunk encoder.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(VALUES_COUNT)
+	public int writeZeroRuns(final Bits bits) throws IOException {
+		writer.reset();
+		int index = 0;
+		while (index < VALUES_COUNT) {
+			if (values[index] == 0) {
+				int end = index + 1;
+				while (end < VALUES_COUNT && values[end] == 0) {
+					end++;
+				}
+				writer.writeZeroes(end - index);
+				index = end;
+			} else {
+				writer.writeValue(values[index++]);
+			}
+		}
+		bits.bits += codedBits;
+		return writer.finish();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(VALUES_COUNT)
+	public int read(final Bits bits) throws IOException {
+		reader.setInput(codedData);
+		int checksum = 0;
+		for (int index = 0; index < VALUES_COUNT; index++) {
+			checksum += reader.readValue();
+		}
+		bits.bits += codedBits;
+		return checksum;
+	}
+	
+	/**
+	 * Same as {@link #read(Bits)}, decoding all the values through {@link ExpGolombReader#readValues(int[], int)}.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(VALUES_COUNT)
+	public int[] readValues(final Bits bits) throws IOException {
+		reader.setInput(codedData);
+		reader.readValues(decodedValues, VALUES_COUNT);
+		bits.bits += codedBits;
+		return decodedValues;
+	}
+	
+}
@@ -0,0 +1,61 @@
+package br.jpiccoli.video;
+
+import java.util.Random;
+
+/**
+ * Generates deterministic 8 bits grayscale video for the benchmarks.
+ *
+ * The frames contain a smooth gradient that moves across the frame, a sharp edged square moving
+ * diagonally and a small amount of noise, so the transform output has both low and high frequencies
+ * and the quantized data is neither trivially compressible nor pure noise.
+ *
+ * @author Juliano Piccoli
+ */
+public final class SyntheticVideo {
+
+	private SyntheticVideo() {
+	}
+	
+	/**
+	 * Parses a resolution in the "<width>x<height>" format.
+	 * @param resolution The resolution.
+	 * @return Vector containing the width and the height.
+	 */
+	public static int[] parseResolution(final String resolution) {
+		final int separator = resolution.indexOf('x');
+		return new int[] { Integer.parseInt(resolution.substring(0, separator)), Integer.parseInt(resolution.substring(separator + 1)) };
+	}
+	
+	/**
+	 * Generates a sequence of frames.
+	 * @param width Width of each frame.
+	 * @param height Height of each frame.
+	 * @param firstFrame Index of the first generated frame.
+	 * @param frames Number of frames.
+	 * @return The pixels of the frames, one byte per pixel, frame after frame.
+	 */
+	public static byte[] frames(final int width, final int height, final int firstFrame, final int frames) {
+		final Random random = new Random(firstFrame);
+		final byte[] pixels = new byte[width * height * frames];
+		final int squareSize = Math.max(8, height / 4);
+		int index = 0;
+		for (int frame = firstFrame; frame < firstFrame + frames; frame++) {
+			final int squareX = (frame * 3) % Math.max(1, width - squareSize);
+			final int squareY = (frame * 2) % Math.max(1, height - squareSize);
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int value;
+					if (x >= squareX && x < squareX + squareSize && y >= squareY && y < squareY + squareSize) {
+						value = 220;
+					} else {
+						value = 40 + (((x + frame * 2) * 160 / width + y * 40 / height) & 0xFF) % 160;
+					}
+					value += random.nextInt(9) - 4;
+					pixels[index++] = (byte) Math.max(0, Math.min(255, value));
+				}
+			}
+		}
+		return pixels;
+	}
+	
+}
@@ -0,0 +1,76 @@
+package br.jpiccoli.video.dct;
+
+import java.lang.management.ManagementFactory;
+
+import br.jpiccoli.video.SyntheticVideo;
+
+/**
+ * Checks that the transform engines don't allocate memory per block once they are warmed up.
+ *
+ * Each engine transforms the same block many times in the current thread, and the number of bytes
+ * allocated by the thread is read before and after (com.sun.management.ThreadMXBean). The process
+ * exits with an error when any engine allocates. The same figures are reported per operation by the
+ * JMH allocation profiler:
+ *
+ *     java -jar benchmarks/target/benchmarks.jar BlockTransformBenchmark -prof gc    (gc.alloc.rate.norm)
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar br.jpiccoli.video.dct.AllocationCheck
+ *
+ * @author Juliano Piccoli
+ */
+public final class AllocationCheck {
+
+	private static final int CUBE_WIDTH = 8;
+	private static final int CUBE_HEIGHT = 8;
+	private static final int CUBE_DEPTH = 8;
+	private static final int WARMUP_BLOCKS = 10000;
+	private static final int BLOCKS = 10000;
+	
+	private AllocationCheck() {
+	}
+	
+	public static void main(String[] args) {
+		
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		
+		final int cubeSize = CUBE_WIDTH * CUBE_HEIGHT * CUBE_DEPTH;
+		final byte[] frames = SyntheticVideo.frames(CUBE_WIDTH, CUBE_HEIGHT, 0, CUBE_DEPTH);
+		final double[] pixels = new double[cubeSize];
+		for (int index = 0; index < cubeSize; index++) {
+			pixels[index] = frames[index] & 0xFF;
+		}
+		final double[] coefficients = new double[cubeSize];
+		final double[] output = new double[cubeSize];
+		new FastDCT(pixels, coefficients, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH).runSingleBlock();
+		
+		final Transform[] transforms = {
+				new DCT(pixels, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH),
+				new InverseDCT(coefficients, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH),
+				new FastDCT(pixels, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH),
+				new FastInverseDCT(coefficients, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH),
+				new FloatInverseDCT(coefficients, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH)
+		};
+		
+		boolean allocated = false;
+		for (Transform transform : transforms) {
+			for (int block = 0; block < WARMUP_BLOCKS; block++) {
+				transform.runSingleBlock();
+			}
+			final long before = threads.getThreadAllocatedBytes(threadId);
+			for (int block = 0; block < BLOCKS; block++) {
+				transform.runSingleBlock();
+			}
+			final long bytes = threads.getThreadAllocatedBytes(threadId) - before;
+			System.out.println(transform.getClass().getSimpleName() + ": " + bytes + " bytes allocated by " + BLOCKS + " blocks");
+			allocated |= bytes > 0;
+		}
+		
+		if (allocated) {
+			System.out.println("The transforms allocate memory per block");
+			System.exit(1);
+		}
+		
+	}
+	
+}
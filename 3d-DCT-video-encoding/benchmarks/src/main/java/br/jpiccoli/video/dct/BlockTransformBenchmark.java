@@ -0,0 +1,109 @@
+package br.jpiccoli.video.dct;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.jpiccoli.video.SyntheticVideo;
+
+/**
+ * Per block throughput of the transform engines, in blocks per second.
+ *
+ * The double precision engines run over one block instances (see {@link Transform#runSingleBlock()}).
+ * The single precision engine works in place, so its operations include copying the block to the
+ * transformed vector. The inverse transforms get the dequantized coefficients of a real block.
+ * With the JMH option "-prof gc", gc.alloc.rate.norm reports the bytes allocated per block (see {@link AllocationCheck}).
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockTransformBenchmark {
+
+	private static final int CUBE_WIDTH = 8;
+	private static final int CUBE_HEIGHT = 8;
+	private static final int CUBE_DEPTH = 8;
+	private static final int QUANTIZER = 5;
+	
+	@Param({ "reference", "fast", "float" })
+	public String engine;
+	
+	private Transform forward;
+	private Transform inverse;
+	private FloatBlockTransform floatTransform;
+	private float[] floatPixels;
+	private float[] floatBlock;
+	
+	@Setup
+	public void setup() {
+		
+		final int cubeSize = CUBE_WIDTH * CUBE_HEIGHT * CUBE_DEPTH;
+		final byte[] frames = SyntheticVideo.frames(CUBE_WIDTH, CUBE_HEIGHT, 0, CUBE_DEPTH);
+		final double[] pixels = new double[cubeSize];
+		for (int index = 0; index < cubeSize; index++) {
+			pixels[index] = frames[index] & 0xFF;
+		}
+		
+		// Dequantized coefficients, as seen by the decoder
+		final double[] coefficients = new double[cubeSize];
+		new FastDCT(pixels, coefficients, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH).runSingleBlock();
+		for (int k = 0, index = 0; k < CUBE_DEPTH; k++) {
+			for (int i = 0; i < CUBE_HEIGHT; i++) {
+				for (int j = 0; j < CUBE_WIDTH; j++, index++) {
+					final int divisor = Math.max(1, QUANTIZER * (i + j + k));
+					coefficients[index] = Math.round(coefficients[index] / divisor) * divisor;
+				}
+			}
+		}
+		
+		final double[] output = new double[cubeSize];
+		if (engine.equalsIgnoreCase("reference")) {
+			forward = new DCT(pixels, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH);
+			inverse = new InverseDCT(coefficients, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH);
+		} else if (engine.equalsIgnoreCase("float")) {
+			floatTransform = FloatBlockTransform.create(CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH);
+			floatPixels = new float[cubeSize];
+			for (int index = 0; index < cubeSize; index++) {
+				floatPixels[index] = (float) pixels[index];
+			}
+			floatBlock = new float[cubeSize];
+			inverse = new FloatInverseDCT(coefficients, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH);
+		} else {
+			forward = new FastDCT(pixels, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH);
+			inverse = new FastInverseDCT(coefficients, output, CUBE_WIDTH, CUBE_HEIGHT, CUBE_WIDTH, CUBE_HEIGHT, CUBE_DEPTH);
+		}
+		
+	}
+	
+	@Benchmark
+	public Object forwardDCT() {
+		if (floatTransform != null) {
+			System.arraycopy(floatPixels, 0, floatBlock, 0, floatBlock.length);
+			floatTransform.forward(floatBlock, 0);
+			return floatBlock;
+		}
+		forward.runSingleBlock();
+		return forward;
+	}
+	
+	@Benchmark
+	public Object inverseDCT() {
+		inverse.runSingleBlock();
+		return inverse;
+	}
+	
+}
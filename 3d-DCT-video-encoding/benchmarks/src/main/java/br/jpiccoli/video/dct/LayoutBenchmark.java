@@ -0,0 +1,113 @@
+package br.jpiccoli.video.dct;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.jpiccoli.video.SyntheticVideo;
+
+/**
+ * Throughput of {@link Transform#run()} over a slab of 8 frames in the raster and in the tiled layouts
+ * (see {@link Transform.Layout}), at different resolutions, in frames per second.
+ *
+ * The "run" benchmark only transforms the slab. The "convert" benchmark also converts the tiled vectors
+ * from or to the raster layout (see {@link TiledLayout}): the input of the forward transform and the output
+ * of the inverse ones, as done at the I/O boundary of the codec. In the raster layout, both are equal.
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LayoutBenchmark {
+
+	private static final int CUBE_DEPTH = 8;
+	
+	@Param({ "FastDCT", "FastInverseDCT", "FloatInverseDCT" })
+	public String transform;
+	
+	@Param({ "640x480", "1280x720", "1920x1080" })
+	public String resolution;
+	
+	@Param({ "RASTER", "TILED" })
+	public Transform.Layout layout;
+	
+	private Transform instance;
+	private TiledLayout tiledLayout;
+	private double[] rasterInput;
+	private double[] input;
+	private double[] output;
+	private double[] rasterOutput;
+	
+	@Setup
+	public void setup() throws InterruptedException {
+		final int[] dimensions = SyntheticVideo.parseResolution(resolution);
+		final int width = dimensions[0];
+		final int height = dimensions[1];
+		final int slabSize = width * height * CUBE_DEPTH;
+		final byte[] frames = SyntheticVideo.frames(width, height, 0, CUBE_DEPTH);
+		final double[] pixels = new double[slabSize];
+		for (int index = 0; index < slabSize; index++) {
+			pixels[index] = frames[index] & 0xFF;
+		}
+		tiledLayout = new TiledLayout(width, height, 8, 8, CUBE_DEPTH);
+		
+		final boolean forward = transform.equals("FastDCT");
+		if (forward) {
+			rasterInput = pixels;
+		} else {
+			rasterInput = new double[slabSize];
+			new FastDCT(pixels, rasterInput, width, height, 8, 8, CUBE_DEPTH).run();
+		}
+		input = rasterInput.clone();
+		if (layout == Transform.Layout.TILED) {
+			tiledLayout.fromRaster(rasterInput, input);
+		}
+		output = new double[slabSize];
+		rasterOutput = new double[slabSize];
+		
+		if (transform.equals("FastInverseDCT")) {
+			instance = new FastInverseDCT(input, output, width, height, 8, 8, CUBE_DEPTH);
+		} else if (transform.equals("FloatInverseDCT")) {
+			instance = new FloatInverseDCT(input, output, width, height, 8, 8, CUBE_DEPTH);
+		} else {
+			instance = new FastDCT(input, output, width, height, 8, 8, CUBE_DEPTH);
+		}
+		instance.setLayout(layout);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CUBE_DEPTH)
+	public Transform run() throws InterruptedException {
+		instance.run();
+		return instance;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CUBE_DEPTH)
+	public Transform convert() throws InterruptedException {
+		if (layout == Transform.Layout.TILED && transform.equals("FastDCT")) {
+			tiledLayout.fromRaster(rasterInput, input);
+		}
+		instance.run();
+		if (layout == Transform.Layout.TILED && !transform.equals("FastDCT")) {
+			tiledLayout.toRaster(output, rasterOutput);
+		}
+		return instance;
+	}
+	
+}
@@ -0,0 +1,93 @@
+package br.jpiccoli.video.dct;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.jpiccoli.video.SyntheticVideo;
+
+/**
+ * Throughput of {@link Transform#run(java.util.concurrent.Executor)} over a 640x480 slab of 8 frames
+ * with different numbers of threads and schedulings (see {@link Transform.Scheduling}), in frames per second.
+ * The recursive scheduling runs in a {@link ForkJoinPool}; the other ones, in a fixed thread pool.
+ *
+ * @author Juliano Piccoli
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformRunBenchmark {
+
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+	private static final int CUBE_DEPTH = 8;
+	
+	@Param({ "FastDCT", "FastInverseDCT", "FloatInverseDCT" })
+	public String transform;
+	
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+	
+	@Param({ "BLOCK", "ROW", "RECURSIVE" })
+	public Transform.Scheduling scheduling;
+	
+	private Transform instance;
+	private ExecutorService executor;
+	
+	@Setup
+	public void setup() throws InterruptedException {
+		final int slabSize = WIDTH * HEIGHT * CUBE_DEPTH;
+		final byte[] frames = SyntheticVideo.frames(WIDTH, HEIGHT, 0, CUBE_DEPTH);
+		final double[] pixels = new double[slabSize];
+		for (int index = 0; index < slabSize; index++) {
+			pixels[index] = frames[index] & 0xFF;
+		}
+		final double[] coefficients = new double[slabSize];
+		new FastDCT(pixels, coefficients, WIDTH, HEIGHT, 8, 8, CUBE_DEPTH).run();
+		final double[] output = new double[slabSize];
+		if (transform.equals("FastInverseDCT")) {
+			instance = new FastInverseDCT(coefficients, output, WIDTH, HEIGHT, 8, 8, CUBE_DEPTH);
+		} else if (transform.equals("FloatInverseDCT")) {
+			instance = new FloatInverseDCT(coefficients, output, WIDTH, HEIGHT, 8, 8, CUBE_DEPTH);
+		} else {
+			instance = new FastDCT(pixels, output, WIDTH, HEIGHT, 8, 8, CUBE_DEPTH);
+		}
+		instance.setScheduling(scheduling);
+		if (scheduling == Transform.Scheduling.RECURSIVE) {
+			executor = new ForkJoinPool(threads);
+		} else {
+			executor = Executors.newFixedThreadPool(threads);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(CUBE_DEPTH)
+	public Transform run() throws InterruptedException {
+		instance.run(executor);
+		return instance;
+	}
+	
+}
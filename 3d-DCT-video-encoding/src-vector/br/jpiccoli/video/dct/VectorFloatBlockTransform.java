@@ -0,0 +1,319 @@
+package br.jpiccoli.video.dct;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Single precision separable DCT implemented with the Java Vector API.
+ *
+ * The faces of the blocks must be 8x8, so a whole row of a face fits in one 256 bits vector. The
+ * 1D transforms are applied to 8 lines at once: the column pass loads the 8 rows of a face and runs the
+ * AAN butterfly over them, each lane transforming one column. The frame pass does the same with the
+ * rows found at the same position of every face. Before the row pass, each face is transposed to a
+ * temporary vector, so its rows are transformed the same way as the columns. Frames with a length
+ * other than 8 use the direct evaluation of the DCT.
+ *
+ * This class requires Java 16 or newer with the jdk.incubator.vector module enabled
+ * (--add-modules jdk.incubator.vector). It is loaded by {@link FloatBlockTransform#create(int, int, int)}
+ * when available, so the rest of the codec still runs on older Java versions.
+ *
+ * @author Juliano Piccoli
+ */
+public class VectorFloatBlockTransform extends FloatBlockTransform {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_256;
+	private static final int LENGTH = 8;
+	
+	private static final float C4 = (float) Math.cos(4 * Math.PI / 16);
+	private static final float C6 = (float) Math.cos(6 * Math.PI / 16);
+	private static final float C2_MINUS_C6 = (float) (Math.cos(2 * Math.PI / 16) - C6);
+	private static final float C2_PLUS_C6 = (float) (Math.cos(2 * Math.PI / 16) + C6);
+	
+	private static final float SQRT_2 = (float) Math.sqrt(2.0d);
+	private static final float C2_TIMES_2 = (float) (2 * Math.cos(2 * Math.PI / 16));
+	private static final float C2_MINUS_C6_TIMES_2 = 2 * C2_MINUS_C6;
+	private static final float C2_PLUS_C6_TIMES_2 = 2 * C2_PLUS_C6;
+	
+	private static final float[] OUTPUT_SCALE = new float[LENGTH];
+	private static final float[] INPUT_SCALE = new float[LENGTH];
+	
+	static {
+		// Same scale factors used by the scalar AAN implementation (see DCT1D).
+		OUTPUT_SCALE[0] = (float) (1.0d / Math.sqrt(8.0d));
+		INPUT_SCALE[0] = (float) (1.0d / Math.sqrt(8.0d));
+		for (int k = 1; k < LENGTH; k++) {
+			OUTPUT_SCALE[k] = (float) (0.25d / Math.cos(k * Math.PI / 16));
+			INPUT_SCALE[k] = (float) (Math.cos(k * Math.PI / 16) / 2.0d);
+		}
+	}
+	
+	private final float[][] frameCoefficients;
+	private final float[] frameScratch;
+	private final float[] face = new float[LENGTH * LENGTH];
+	
+	/**
+	 * Constructor.
+	 * @param cubeWidth Width of each transform block. Must be 8.
+	 * @param cubeHeight Height of each transform block. Must be 8.
+	 * @param cubeDepth Depth of each transform block.
+	 * @throws IllegalArgumentException If the block faces are not 8x8.
+	 * @throws UnsupportedOperationException If the processor does not support 256 bits vectors.
+	 */
+	public VectorFloatBlockTransform(final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		super(cubeWidth, cubeHeight, cubeDepth);
+		if (cubeWidth != LENGTH || cubeHeight != LENGTH) {
+			throw new IllegalArgumentException("The Vector API transform requires 8x8 block faces");
+		}
+		if (FloatVector.SPECIES_PREFERRED.vectorBitSize() < SPECIES.vectorBitSize()) {
+			throw new UnsupportedOperationException("256 bits vectors are not supported by the processor");
+		}
+		if (cubeDepth != LENGTH) {
+			frameCoefficients = new float[cubeDepth][cubeDepth];
+			final double piOverLength = Math.PI / cubeDepth;
+			final double scale = Math.sqrt(2.0d / cubeDepth);
+			for (int k = 0; k < cubeDepth; k++) {
+				final double c = k == 0 ? Transform.INVERSE_SQRT_2 : 1.0d;
+				for (int n = 0; n < cubeDepth; n++) {
+					frameCoefficients[k][n] = (float) (scale * c * Math.cos(piOverLength * (n + 0.5d) * k));
+				}
+			}
+		} else {
+			frameCoefficients = null;
+		}
+		this.frameScratch = new float[cubeDepth * LENGTH];
+	}
+	
+	@Override
+	public void forward(final float[] block, final int offset) {
+		
+		for (int frameOffset = offset; frameOffset < offset + cubeSize; frameOffset += cubeFaceSize) {
+			// Rows: the face is transposed, so each vector holds one column of the face
+			transpose(block, frameOffset, face, 0);
+			forwardAAN(face, 0, LENGTH);
+			transpose(face, 0, block, frameOffset);
+			// Columns: each vector holds one row of the face
+			forwardAAN(block, frameOffset, LENGTH);
+		}
+		
+		// Frames: each vector holds the same row of every face
+		for (int rowOffset = offset; rowOffset < offset + cubeFaceSize; rowOffset += LENGTH) {
+			if (frameCoefficients == null) {
+				forwardAAN(block, rowOffset, cubeFaceSize);
+			} else {
+				forwardDirect(block, rowOffset);
+			}
+		}
+		
+	}
+	
+	@Override
+	public void inverse(final float[] block, final int offset) {
+		
+		if (isZero(block, offset + 1, 1, cubeSize - 1)) {
+			// Only the DC coefficient is present: every value of the block is the same.
+			final float value = block[offset] * dcScale;
+			for (int index = offset; index < offset + cubeSize; index++) {
+				block[index] = value;
+			}
+			return;
+		}
+		
+		for (int frameOffset = offset; frameOffset < offset + cubeSize; frameOffset += cubeFaceSize) {
+			// Faces containing only zeros remain zero after the row and column passes.
+			if (!isZero(block, frameOffset, 1, cubeFaceSize)) {
+				// Rows: the face is transposed, so each vector holds one column of the face
+				transpose(block, frameOffset, face, 0);
+				inverseAAN(face, 0, LENGTH);
+				transpose(face, 0, block, frameOffset);
+				// Columns: each vector holds one row of the face
+				inverseAAN(block, frameOffset, LENGTH);
+			}
+		}
+		
+		// Frames: each vector holds the same row of every face
+		for (int rowOffset = offset; rowOffset < offset + cubeFaceSize; rowOffset += LENGTH) {
+			if (frameCoefficients == null) {
+				inverseAAN(block, rowOffset, cubeFaceSize);
+			} else {
+				inverseDirect(block, rowOffset);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Copies a face of the block, swapping its rows and columns.
+	 */
+	private static void transpose(final float[] source, final int sourceOffset, final float[] target, final int targetOffset) {
+		for (int i = 0, rowOffset = sourceOffset; i < LENGTH; i++, rowOffset += LENGTH) {
+			for (int j = 0, position = targetOffset + i; j < LENGTH; j++, position += LENGTH) {
+				target[position] = source[rowOffset + j];
+			}
+		}
+	}
+	
+	/**
+	 * Direct evaluation of the DCT formula over the vectors found at the same row of every face.
+	 */
+	private void forwardDirect(final float[] block, final int rowOffset) {
+		for (int k = 0; k < cubeDepth; k++) {
+			final float[] coefficients = frameCoefficients[k];
+			FloatVector value = FloatVector.zero(SPECIES);
+			for (int n = 0, position = rowOffset; n < cubeDepth; n++, position += cubeFaceSize) {
+				value = value.add(FloatVector.fromArray(SPECIES, block, position).mul(coefficients[n]));
+			}
+			value.intoArray(frameScratch, k * LENGTH);
+		}
+		for (int k = 0, position = rowOffset; k < cubeDepth; k++, position += cubeFaceSize) {
+			System.arraycopy(frameScratch, k * LENGTH, block, position, LENGTH);
+		}
+	}
+	
+	/**
+	 * Direct evaluation of the inverse DCT formula over the vectors found at the same row of every face.
+	 */
+	private void inverseDirect(final float[] block, final int rowOffset) {
+		for (int n = 0; n < cubeDepth; n++) {
+			FloatVector value = FloatVector.zero(SPECIES);
+			for (int k = 0, position = rowOffset; k < cubeDepth; k++, position += cubeFaceSize) {
+				value = value.add(FloatVector.fromArray(SPECIES, block, position).mul(frameCoefficients[k][n]));
+			}
+			value.intoArray(frameScratch, n * LENGTH);
+		}
+		for (int n = 0, position = rowOffset; n < cubeDepth; n++, position += cubeFaceSize) {
+			System.arraycopy(frameScratch, n * LENGTH, block, position, LENGTH);
+		}
+	}
+	
+	/**
+	 * AAN butterfly applied to 8 lines at once, in place. Same operations of the scalar version.
+	 * @param block Vector containing the block.
+	 * @param offset Offset of the first vector.
+	 * @param stride Distance between two consecutive vectors.
+	 */
+	private static void forwardAAN(final float[] block, final int offset, final int stride) {
+		
+		final int p0 = offset;
+		final int p1 = p0 + stride;
+		final int p2 = p1 + stride;
+		final int p3 = p2 + stride;
+		final int p4 = p3 + stride;
+		final int p5 = p4 + stride;
+		final int p6 = p5 + stride;
+		final int p7 = p6 + stride;
+		
+		final FloatVector v0 = FloatVector.fromArray(SPECIES, block, p0);
+		final FloatVector v1 = FloatVector.fromArray(SPECIES, block, p1);
+		final FloatVector v2 = FloatVector.fromArray(SPECIES, block, p2);
+		final FloatVector v3 = FloatVector.fromArray(SPECIES, block, p3);
+		final FloatVector v4 = FloatVector.fromArray(SPECIES, block, p4);
+		final FloatVector v5 = FloatVector.fromArray(SPECIES, block, p5);
+		final FloatVector v6 = FloatVector.fromArray(SPECIES, block, p6);
+		final FloatVector v7 = FloatVector.fromArray(SPECIES, block, p7);
+		
+		final FloatVector tmp0 = v0.add(v7);
+		final FloatVector tmp7 = v0.sub(v7);
+		final FloatVector tmp1 = v1.add(v6);
+		final FloatVector tmp6 = v1.sub(v6);
+		final FloatVector tmp2 = v2.add(v5);
+		final FloatVector tmp5 = v2.sub(v5);
+		final FloatVector tmp3 = v3.add(v4);
+		final FloatVector tmp4 = v3.sub(v4);
+		
+		// Even part
+		final FloatVector tmp10 = tmp0.add(tmp3);
+		final FloatVector tmp13 = tmp0.sub(tmp3);
+		final FloatVector tmp11 = tmp1.add(tmp2);
+		final FloatVector tmp12 = tmp1.sub(tmp2);
+		
+		tmp10.add(tmp11).mul(OUTPUT_SCALE[0]).intoArray(block, p0);
+		tmp10.sub(tmp11).mul(OUTPUT_SCALE[4]).intoArray(block, p4);
+		
+		final FloatVector z1 = tmp12.add(tmp13).mul(C4);
+		tmp13.add(z1).mul(OUTPUT_SCALE[2]).intoArray(block, p2);
+		tmp13.sub(z1).mul(OUTPUT_SCALE[6]).intoArray(block, p6);
+		
+		// Odd part
+		final FloatVector odd10 = tmp4.add(tmp5);
+		final FloatVector odd11 = tmp5.add(tmp6);
+		final FloatVector odd12 = tmp6.add(tmp7);
+		
+		final FloatVector z5 = odd10.sub(odd12).mul(C6);
+		final FloatVector z2 = odd10.mul(C2_MINUS_C6).add(z5);
+		final FloatVector z4 = odd12.mul(C2_PLUS_C6).add(z5);
+		final FloatVector z3 = odd11.mul(C4);
+		
+		final FloatVector z11 = tmp7.add(z3);
+		final FloatVector z13 = tmp7.sub(z3);
+		
+		z13.add(z2).mul(OUTPUT_SCALE[5]).intoArray(block, p5);
+		z13.sub(z2).mul(OUTPUT_SCALE[3]).intoArray(block, p3);
+		z11.add(z4).mul(OUTPUT_SCALE[1]).intoArray(block, p1);
+		z11.sub(z4).mul(OUTPUT_SCALE[7]).intoArray(block, p7);
+		
+	}
+	
+	/**
+	 * Inverse AAN butterfly applied to 8 lines at once, in place. Same operations of the scalar version.
+	 * @see #forwardAAN(float[], int, int)
+	 */
+	private static void inverseAAN(final float[] block, final int offset, final int stride) {
+		
+		final int p0 = offset;
+		final int p1 = p0 + stride;
+		final int p2 = p1 + stride;
+		final int p3 = p2 + stride;
+		final int p4 = p3 + stride;
+		final int p5 = p4 + stride;
+		final int p6 = p5 + stride;
+		final int p7 = p6 + stride;
+		
+		// Even part
+		final FloatVector in0 = FloatVector.fromArray(SPECIES, block, p0).mul(INPUT_SCALE[0]);
+		final FloatVector in2 = FloatVector.fromArray(SPECIES, block, p2).mul(INPUT_SCALE[2]);
+		final FloatVector in4 = FloatVector.fromArray(SPECIES, block, p4).mul(INPUT_SCALE[4]);
+		final FloatVector in6 = FloatVector.fromArray(SPECIES, block, p6).mul(INPUT_SCALE[6]);
+		
+		final FloatVector tmp10 = in0.add(in4);
+		final FloatVector tmp11 = in0.sub(in4);
+		final FloatVector tmp13 = in2.add(in6);
+		final FloatVector tmp12 = in2.sub(in6).mul(SQRT_2).sub(tmp13);
+		
+		final FloatVector tmp0 = tmp10.add(tmp13);
+		final FloatVector tmp3 = tmp10.sub(tmp13);
+		final FloatVector tmp1 = tmp11.add(tmp12);
+		final FloatVector tmp2 = tmp11.sub(tmp12);
+		
+		// Odd part
+		final FloatVector in1 = FloatVector.fromArray(SPECIES, block, p1).mul(INPUT_SCALE[1]);
+		final FloatVector in3 = FloatVector.fromArray(SPECIES, block, p3).mul(INPUT_SCALE[3]);
+		final FloatVector in5 = FloatVector.fromArray(SPECIES, block, p5).mul(INPUT_SCALE[5]);
+		final FloatVector in7 = FloatVector.fromArray(SPECIES, block, p7).mul(INPUT_SCALE[7]);
+		
+		final FloatVector z13 = in5.add(in3);
+		final FloatVector z10 = in5.sub(in3);
+		final FloatVector z11 = in1.add(in7);
+		final FloatVector z12 = in1.sub(in7);
+		
+		final FloatVector tmp7 = z11.add(z13);
+		final FloatVector odd11 = z11.sub(z13).mul(SQRT_2);
+		final FloatVector z5 = z10.add(z12).mul(C2_TIMES_2);
+		final FloatVector odd10 = z12.mul(C2_MINUS_C6_TIMES_2).sub(z5);
+		final FloatVector odd12 = z5.sub(z10.mul(C2_PLUS_C6_TIMES_2));
+		
+		final FloatVector tmp6 = odd12.sub(tmp7);
+		final FloatVector tmp5 = odd11.sub(tmp6);
+		final FloatVector tmp4 = odd10.add(tmp5);
+		
+		tmp0.add(tmp7).intoArray(block, p0);
+		tmp0.sub(tmp7).intoArray(block, p7);
+		tmp1.add(tmp6).intoArray(block, p1);
+		tmp1.sub(tmp6).intoArray(block, p6);
+		tmp2.add(tmp5).intoArray(block, p2);
+		tmp2.sub(tmp5).intoArray(block, p5);
+		tmp3.add(tmp4).intoArray(block, p4);
+		tmp3.sub(tmp4).intoArray(block, p3);
+		
+	}
+	
+}
@@ -0,0 +1,98 @@
+package br.jpiccoli.video;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoder of the chunks coded by {@link ArithmeticEncoder}.
+ *
+ * @author Juliano Piccoli
+ */
+class ArithmeticDecoder extends ArithmeticModel implements EntropyDecoder {
+
+	private final RangeDecoder rangeDecoder;
+	
+	ArithmeticDecoder(final ContainerHeader header) {
+		super(header);
+		this.rangeDecoder = new RangeDecoder();
+	}
+	
+	@Override
+	public void setInput(final byte[] chunkData) {
+		rangeDecoder.setInput(chunkData);
+		reset();
+	}
+	
+	@Override
+	public int readCube(final int[] coefficients) throws IOException {
+		
+		Arrays.fill(coefficients, 0);
+		
+		final int dc = previousDc + decodeDcDifference();
+		coefficients[0] = dc;
+		previousDc = dc;
+		magnitudes[0] = Math.abs(dc);
+		
+		int last = 0;
+		previousCoded = rangeDecoder.decodeBit(codedCubeProbabilities, previousCoded);
+		if (previousCoded != 0) {
+			for (int position = 1; ; position++) {
+				if (position == cubeSize) {
+					throw new IOException("Invalid arithmetic coded cube");
+				}
+				final int significantNeighbors = significantNeighbors(position);
+				if (rangeDecoder.decodeBit(significanceProbabilities, slices[position] * 4 + significantNeighbors) != 0) {
+					final int magnitude = decodeMagnitude(levelContext(position, significantNeighbors)) + 1;
+					coefficients[position] = rangeDecoder.decodeDirectBits(1) != 0 ? -magnitude : magnitude;
+					magnitudes[position] = magnitude;
+					if (rangeDecoder.decodeBit(lastProbabilities, slices[position]) != 0) {
+						last = position;
+						break;
+					}
+				}
+			}
+		}
+		
+		// The magnitudes are only used inside the cube.
+		Arrays.fill(magnitudes, 0, last + 1, 0);
+		return last + 1;
+		
+	}
+	
+	private int decodeDcDifference() throws IOException {
+		int prefix = 0;
+		while (rangeDecoder.decodeBit(dcPrefixProbabilities, Math.min(prefix, DC_PREFIX_BINS - 1)) != 0) {
+			prefix++;
+			if (prefix == Integer.SIZE - 1) {
+				throw new IOException("Invalid arithmetic coded DC coefficient");
+			}
+		}
+		final int code = ((1 << prefix) | rangeDecoder.decodeDirectBits(prefix)) - 1;
+		return (code & 1) != 0 ? (code + 1) >>> 1 : -(code >>> 1);
+	}
+	
+	private int decodeMagnitude(final int context) throws IOException {
+		int magnitude = 0;
+		while (magnitude < UNARY_BINS) {
+			if (rangeDecoder.decodeBit(levelProbabilities, context + magnitude) == 0) {
+				return magnitude;
+			}
+			magnitude++;
+		}
+		// Escape: the rest of the magnitude is Exp-Golomb coded with probability 1/2.
+		int prefix = 0;
+		while (rangeDecoder.decodeDirectBits(1) == 0) {
+			prefix++;
+			if (prefix == Integer.SIZE - 1) {
+				throw new IOException("Invalid arithmetic coded magnitude");
+			}
+		}
+		final int code = (1 << prefix) | rangeDecoder.decodeDirectBits(prefix);
+		return magnitude + code - 1;
+	}
+	
+	@Override
+	public void close() {
+	}
+	
+}
@@ -0,0 +1,101 @@
+package br.jpiccoli.video;
+
+import java.util.Arrays;
+
+/**
+ * Context adaptive binary arithmetic coder of the quantized coefficients (see {@link ArithmeticModel}).
+ *
+ * The coded data is not deflated: the adaptive probabilities already capture the statistics of the
+ * coefficients, so the output of the range coder is the chunk data itself.
+ *
+ * @author Juliano Piccoli
+ */
+class ArithmeticEncoder extends ArithmeticModel implements EntropyEncoder {
+
+	private final RangeEncoder rangeEncoder;
+	
+	ArithmeticEncoder(final ContainerHeader header) {
+		super(header);
+		this.rangeEncoder = new RangeEncoder(header.getFrameSize());
+	}
+	
+	@Override
+	public byte[] encode(final short[] coefficients) {
+		rangeEncoder.reset();
+		reset();
+		for (int cubeOffset = 0; cubeOffset < coefficients.length; cubeOffset += cubeSize) {
+			encodeCube(coefficients, cubeOffset);
+		}
+		final int length = rangeEncoder.finish();
+		return Arrays.copyOf(rangeEncoder.getOutput(), length);
+	}
+	
+	private void encodeCube(final short[] coefficients, final int cubeOffset) {
+		
+		final int dc = coefficients[cubeOffset];
+		encodeDcDifference(dc - previousDc);
+		previousDc = dc;
+		magnitudes[0] = Math.abs(dc);
+		
+		int last = 0;
+		for (int position = cubeSize - 1; position > 0; position--) {
+			if (coefficients[cubeOffset + position] != 0) {
+				last = position;
+				break;
+			}
+		}
+		final int coded = last > 0 ? 1 : 0;
+		rangeEncoder.encodeBit(codedCubeProbabilities, previousCoded, coded);
+		previousCoded = coded;
+		
+		for (int position = 1; position <= last; position++) {
+			final int value = coefficients[cubeOffset + position];
+			final int significantNeighbors = significantNeighbors(position);
+			if (value == 0) {
+				rangeEncoder.encodeBit(significanceProbabilities, slices[position] * 4 + significantNeighbors, 0);
+			} else {
+				rangeEncoder.encodeBit(significanceProbabilities, slices[position] * 4 + significantNeighbors, 1);
+				final int magnitude = Math.abs(value);
+				encodeMagnitude(magnitude - 1, levelContext(position, significantNeighbors));
+				rangeEncoder.encodeDirectBits(value < 0 ? 1 : 0, 1);
+				magnitudes[position] = magnitude;
+				rangeEncoder.encodeBit(lastProbabilities, slices[position], position == last ? 1 : 0);
+			}
+		}
+		
+		// The magnitudes are only used inside the cube.
+		Arrays.fill(magnitudes, 0, last + 1, 0);
+		
+	}
+	
+	private void encodeDcDifference(final int difference) {
+		final int code = (difference <= 0 ? -2 * difference : 2 * difference - 1) + 1;
+		final int prefix = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(code);
+		for (int bin = 0; bin < prefix; bin++) {
+			rangeEncoder.encodeBit(dcPrefixProbabilities, Math.min(bin, DC_PREFIX_BINS - 1), 1);
+		}
+		rangeEncoder.encodeBit(dcPrefixProbabilities, Math.min(prefix, DC_PREFIX_BINS - 1), 0);
+		rangeEncoder.encodeDirectBits(code, prefix);
+	}
+	
+	private void encodeMagnitude(final int magnitude, final int context) {
+		final int bins = Math.min(magnitude, UNARY_BINS);
+		for (int bin = 0; bin < bins; bin++) {
+			rangeEncoder.encodeBit(levelProbabilities, context + bin, 1);
+		}
+		if (magnitude < UNARY_BINS) {
+			rangeEncoder.encodeBit(levelProbabilities, context + magnitude, 0);
+		} else {
+			// Escape: the rest of the magnitude is Exp-Golomb coded with probability 1/2.
+			final int code = magnitude - UNARY_BINS + 1;
+			final int prefix = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(code);
+			rangeEncoder.encodeDirectBits(0, prefix);
+			rangeEncoder.encodeDirectBits(code, prefix + 1);
+		}
+	}
+	
+	@Override
+	public void close() {
+	}
+	
+}
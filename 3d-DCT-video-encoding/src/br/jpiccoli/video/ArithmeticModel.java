@@ -0,0 +1,136 @@
+package br.jpiccoli.video;
+
+import java.util.Arrays;
+
+/**
+ * Context model shared by {@link ArithmeticEncoder} and {@link ArithmeticDecoder}.
+ *
+ * Each cube is coded in diagonal scan order as follows:
+ * <ul>
+ * <li>The DC coefficient, as the difference from the DC coefficient of the previous cube of the chunk. The
+ * difference is coded with the Exp-Golomb code, whose prefix bits are coded with adaptive probabilities;</li>
+ * <li>A flag telling whether the cube has any non zero AC coefficient, in the context of the flag of the
+ * previous cube;</li>
+ * <li>For each AC coefficient up to the last non zero one: a significance flag (non zero coefficient) and, for
+ * the significant coefficients, the magnitude, the sign and a flag telling whether it is the last one.</li>
+ * </ul>
+ * The significance flags are coded in the context of the diagonal slice of the coefficient (x + y + z, see
+ * {@link ScanOrder#DIAGONAL}) and of how many of its neighbors (the preceding coefficients
+ * along x, y and z, which are scanned first by every {@link ScanOrder}) are significant. The magnitudes
+ * are coded in unary, each bin with its own probability, up to {@link #UNARY_BINS}, followed by an Exp-Golomb
+ * coded escape with probability 1/2. The probabilities are reset at the beginning of each chunk, so the
+ * chunks can be decoded independently.
+ *
+ * @author Juliano Piccoli
+ */
+abstract class ArithmeticModel {
+
+	/**
+	 * Number of magnitude bins coded with adaptive probabilities.
+	 */
+	static final int UNARY_BINS = 14;
+	
+	/**
+	 * The magnitude probabilities depend on the diagonal slice of the coefficient up to this slice.
+	 */
+	static final int LEVEL_SLICES = 4;
+	
+	/**
+	 * Number of adaptive probabilities of the prefix bits of the DC differences.
+	 */
+	static final int DC_PREFIX_BINS = 16;
+	
+	protected final int cubeSize;
+	
+	/**
+	 * Diagonal slice of each scan position.
+	 */
+	protected final int[] slices;
+	
+	/**
+	 * Scan positions of the neighbors of each scan position, three per position. Missing
+	 * neighbors point to the last element of {@link #magnitudes}, which is always zero.
+	 */
+	private final int[] neighbors;
+	
+	/**
+	 * Magnitude of the coefficients of the current cube that were already coded, by scan position.
+	 */
+	protected final int[] magnitudes;
+	
+	protected final short[] dcPrefixProbabilities;
+	protected final short[] codedCubeProbabilities;
+	protected final short[] significanceProbabilities;
+	protected final short[] lastProbabilities;
+	protected final short[] levelProbabilities;
+	
+	protected int previousDc;
+	protected int previousCoded;
+	
+	ArithmeticModel(final ContainerHeader header) {
+		final ScanTable scanTable = header.getScanTable();
+		final int[] scanPositions = scanTable.getInverse();
+		final int cubeFaceSize = header.cubeWidth * header.cubeHeight;
+		this.cubeSize = scanTable.size();
+		this.slices = new int[cubeSize];
+		this.neighbors = new int[cubeSize * 3];
+		this.magnitudes = new int[cubeSize + 1];
+		for (int index = 0; index < cubeSize; index++) {
+			final int x = scanTable.getX(index);
+			final int y = scanTable.getY(index);
+			final int z = scanTable.getZ(index);
+			final int cubeIndex = scanTable.getForward()[index];
+			slices[index] = x + y + z;
+			neighbors[index * 3] = x > 0 ? scanPositions[cubeIndex - 1] : cubeSize;
+			neighbors[index * 3 + 1] = y > 0 ? scanPositions[cubeIndex - header.cubeWidth] : cubeSize;
+			neighbors[index * 3 + 2] = z > 0 ? scanPositions[cubeIndex - cubeFaceSize] : cubeSize;
+		}
+		final int slicesCount = header.cubeWidth + header.cubeHeight + header.cubeDepth - 2;
+		this.dcPrefixProbabilities = new short[DC_PREFIX_BINS];
+		this.codedCubeProbabilities = new short[2];
+		this.significanceProbabilities = new short[slicesCount * 4];
+		this.lastProbabilities = new short[slicesCount];
+		this.levelProbabilities = new short[LEVEL_SLICES * 2 * UNARY_BINS];
+	}
+	
+	/**
+	 * Restores the initial state of the model, at the beginning of a chunk.
+	 */
+	protected void reset() {
+		Arrays.fill(dcPrefixProbabilities, RangeEncoder.INITIAL_PROBABILITY);
+		Arrays.fill(codedCubeProbabilities, RangeEncoder.INITIAL_PROBABILITY);
+		Arrays.fill(significanceProbabilities, RangeEncoder.INITIAL_PROBABILITY);
+		Arrays.fill(lastProbabilities, RangeEncoder.INITIAL_PROBABILITY);
+		Arrays.fill(levelProbabilities, RangeEncoder.INITIAL_PROBABILITY);
+		Arrays.fill(magnitudes, 0);
+		previousDc = 0;
+		previousCoded = 0;
+	}
+	
+	/**
+	 * @return Number of significant neighbors (zero to three) of the scan position.
+	 */
+	protected int significantNeighbors(final int position) {
+		final int offset = position * 3;
+		int count = 0;
+		if (magnitudes[neighbors[offset]] != 0) {
+			count++;
+		}
+		if (magnitudes[neighbors[offset + 1]] != 0) {
+			count++;
+		}
+		if (magnitudes[neighbors[offset + 2]] != 0) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * @return Index of the first magnitude probability of the scan position.
+	 */
+	protected int levelContext(final int position, final int significantNeighbors) {
+		final int slice = Math.min(slices[position], LEVEL_SLICES - 1);
+		return (slice * 2 + (significantNeighbors > 1 ? 1 : 0)) * UNARY_BINS;
+	}
+	
+}
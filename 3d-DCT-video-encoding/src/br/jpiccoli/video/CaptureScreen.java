@@ -18,8 +18,9 @@ public class CaptureScreen {
 	public static void main(String[] args) throws AWTException, InterruptedException, IOException {
 		
 		if (args.length == 0) {
-			System.out.println("Usage: java CaptureScreen <output file name> <frame rate> <horizontal scale down factor> <vertical scale down factor>");
+			System.out.println("Usage: java CaptureScreen <output file name> <frame rate> <horizontal scale down factor> <vertical scale down factor> <cube width> <cube height>");
 			System.out.println("Parameter <output file name> is mandatory");
+			System.out.println("The frames are padded to multiples of the cube width and height used by the encoder (default 8)");
 			System.exit(-1);
 		}
 
@@ -27,6 +28,8 @@ public class CaptureScreen {
 		long frameTime = (long) (1000.0f / fps);
 		int horizontalScaleFactor = args.length > 2 ? Integer.parseInt(args[2]) : 1;
 		int verticalScaleFactor = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		int cubeWidth = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+		int cubeHeight = args.length > 5 ? Integer.parseInt(args[5]) : 8;
 		
 		GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
 		DisplayMode displayMode = environment.getDefaultScreenDevice().getDisplayMode();
@@ -35,7 +38,7 @@ public class CaptureScreen {
 
 		BlockingQueue<BufferedImage> imagesQueue = new LinkedBlockingQueue<BufferedImage>();
 		Thread imageProcessingThread = new Thread(new ImageProcessor(args[0], displayMode.getWidth(), displayMode.getHeight(), horizontalScaleFactor,
-				verticalScaleFactor, imagesQueue));
+				verticalScaleFactor, cubeWidth, cubeHeight, imagesQueue));
 		imageProcessingThread.start();
 		
 		int frameCount = 0;
@@ -87,15 +90,19 @@ public class CaptureScreen {
 		private final int originalVideoHeight;
 		private final int horizontalScaleFactor;
 		private final int verticalScaleFactor;
+		private final int cubeWidth;
+		private final int cubeHeight;
 		private final BlockingQueue<BufferedImage> imagesQueue;
 		
 		private ImageProcessor(String outputFilePath, int originalVideoWidth, int originalVideoHeight, int horizontalScaleFactor,
-				int verticalScaleFactor, final BlockingQueue<BufferedImage> imagesQueue) {
+				int verticalScaleFactor, int cubeWidth, int cubeHeight, final BlockingQueue<BufferedImage> imagesQueue) {
 			this.outputFilePath = outputFilePath;
 			this.originalVideoWidth = originalVideoWidth;
 			this.originalVideoHeight = originalVideoHeight;
 			this.horizontalScaleFactor = horizontalScaleFactor;
 			this.verticalScaleFactor = verticalScaleFactor;
+			this.cubeWidth = cubeWidth;
+			this.cubeHeight = cubeHeight;
 			this.imagesQueue = imagesQueue;
 		}
 
@@ -108,14 +115,15 @@ public class CaptureScreen {
 				int adaptedWidth = width;
 				int adaptedHeight = height;
 				
-				// Frame dimensions are rounded to a multiple of 8 because the encoder
-				// uses blocks with 8x8x8 pixels
-				while(adaptedWidth % 8 != 0) {
+				// Frame dimensions are rounded to multiples of the cube dimensions
+				// because the encoder transforms the frames in cubes
+				while(adaptedWidth % cubeWidth != 0) {
 					adaptedWidth++;
 				}
-				while(adaptedHeight % 8 != 0) {
+				while(adaptedHeight % cubeHeight != 0) {
 					adaptedHeight++;
 				}
+				System.out.println("Frame dimensions: " + adaptedWidth + "x" + adaptedHeight);
 				int rgb[] = new int[adaptedWidth * adaptedHeight];
 				byte[] output = new byte[adaptedWidth * adaptedHeight * 3];
 				
@@ -131,7 +139,7 @@ public class CaptureScreen {
 						Graphics graphics = scaled.createGraphics();
 						graphics.drawImage(image, 0, 0, width, height, null);
 						graphics.dispose();
-						scaled.getRGB(0, 0, width, height, rgb, 0, width);
+						scaled.getRGB(0, 0, adaptedWidth, adaptedHeight, rgb, 0, adaptedWidth);
 						for (int y = 0; y < scaled.getHeight(); y++) {
 							for (int x = 0; x < scaled.getWidth(); x++) {
 								int index = y * scaled.getWidth() + x;
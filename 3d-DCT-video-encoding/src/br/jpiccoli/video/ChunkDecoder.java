@@ -0,0 +1,132 @@
+package br.jpiccoli.video;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Entropy decoder for a single chunk (a slab of cubeDepth frames) of the video.
+ *
+ * The {@link #call()} method reads the chunk selected by {@link #setChunk(int)} and decodes its cubes one
+ * at a time with the {@link EntropyDecoder} selected by the header. Each cube is dequantized as soon as it is decoded, and
+ * the DCT coefficients of the slab are returned cube after cube, in the tiled layout of the transforms (see
+ * {@link br.jpiccoli.video.dct.TiledLayout}), so each cube is written contiguously. Cubes that only contain the DC coefficient are marked
+ * at {@link #getDCOnlyBlocks()} and only their DC coefficient is stored, so the inverse transform fills them directly.
+ * Since every chunk is coded independently, multiple instances can run in parallel;
+ * each instance owns its buffers and is reused for multiple chunks.
+ *
+ * @author Juliano Piccoli
+ */
+class ChunkDecoder implements Callable<double[]>, Closeable {
+
+	private final ContainerReader container;
+	private final ContainerHeader header;
+	private final int[] cubeIndices;
+	private final int[] divisors;
+	private int quantizerScale;
+	private final int[] quantizedCube;
+	private final double[] dctCoeffMatrix;
+	private final boolean[] dcOnlyBlocks;
+	private final EntropyDecoder entropyDecoder;
+	private int chunk;
+	
+	/**
+	 * Constructor for the chunks of the grayscale or luma plane.
+	 * @param container Container of the video.
+	 */
+	ChunkDecoder(final ContainerReader container) {
+		this(container, container.getHeader());
+	}
+	
+	/**
+	 * Constructor.
+	 * @param container Container of the video.
+	 * @param header Header of the plane whose chunks are decoded (see {@link ContainerHeader#getPlaneHeader(int)}).
+	 */
+	ChunkDecoder(final ContainerReader container, final ContainerHeader header) {
+		this.container = container;
+		this.header = header;
+		final ScanTable scanTable = header.getScanTable();
+		// For each position of the scan: its offset relative to the first sample
+		// of the cube (its cube index), and its quantization divisor.
+		this.cubeIndices = scanTable.getForward();
+		this.divisors = new int[scanTable.size()];
+		setQuantizerScale(QuantizationTable.UNIT_SCALE);
+		this.quantizedCube = new int[scanTable.size()];
+		this.dctCoeffMatrix = new double[header.getFrameSize() * header.cubeDepth];
+		this.dcOnlyBlocks = new boolean[(header.width / header.cubeWidth) * (header.height / header.cubeHeight)];
+		this.entropyDecoder = EntropyDecoder.create(header);
+	}
+	
+	/**
+	 * @return Vector where the DCT coefficients of the slab are stored.
+	 */
+	double[] getCoefficients() {
+		return dctCoeffMatrix;
+	}
+	
+	/**
+	 * @return Flags of the cubes of the slab that only contain the DC coefficient, in the order they are
+	 * decoded (see {@link br.jpiccoli.video.dct.Transform#setDCOnlyBlocks(boolean[])}).
+	 */
+	boolean[] getDCOnlyBlocks() {
+		return dcOnlyBlocks;
+	}
+	
+	/**
+	 * Selects the chunk decoded by the next call.
+	 * @param chunk Index of the chunk.
+	 */
+	void setChunk(final int chunk) {
+		this.chunk = chunk;
+	}
+	
+	/**
+	 * Updates the quantization divisors when the quantizer scale of the chunk
+	 * differs from the scale of the previous one.
+	 */
+	private void setQuantizerScale(final int scale) {
+		final QuantizationTable quantizationTable = header.getQuantizationTable().scaled(scale);
+		for (int index = 0; index < divisors.length; index++) {
+			divisors[index] = quantizationTable.getStep(cubeIndices[index]);
+		}
+		quantizerScale = scale;
+	}
+	
+	/**
+	 * Decodes the selected chunk.
+	 * @return Vector containing the DCT coefficients of the slab.
+	 */
+	@Override
+	public double[] call() throws IOException {
+		
+		final int cubeSize = cubeIndices.length;
+		
+		// Decode the chunk, dequantizing each cube and storing
+		// its coefficients at their positions in the slab.
+		if (container.getQuantizerScale(chunk) != quantizerScale) {
+			setQuantizerScale(container.getQuantizerScale(chunk));
+		}
+		entropyDecoder.setInput(container.readChunk(chunk));
+		for (int cube = 0, cubeOffset = 0; cube < dcOnlyBlocks.length; cube++, cubeOffset += cubeSize) {
+			final int length = entropyDecoder.readCube(quantizedCube);
+			// The DC coefficient is the first one of every scan order.
+			dcOnlyBlocks[cube] = length <= 1;
+			if (length <= 1) {
+				dctCoeffMatrix[cubeOffset] = quantizedCube[0] * divisors[0];
+				continue;
+			}
+			for (int index = 0; index < cubeSize; index++) {
+				dctCoeffMatrix[cubeOffset + cubeIndices[index]] = quantizedCube[index] * divisors[index];
+			}
+		}
+		return dctCoeffMatrix;
+		
+	}
+	
+	@Override
+	public void close() {
+		entropyDecoder.close();
+	}
+	
+}
@@ -0,0 +1,51 @@
+package br.jpiccoli.video;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Entropy coder for a single chunk (a slab of cubeDepth frames) of the video.
+ *
+ * The quantized coefficients of the slab are stored at {@link #getCoefficients()} (see {@link SlabEncoder}),
+ * and the {@link #call()} method codes them with the {@link EntropyEncoder} selected by the header, returning
+ * the chunk data. Since every chunk is coded independently, multiple instances can run in
+ * parallel; each instance owns its buffers and is reused for multiple chunks.
+ *
+ * @author Juliano Piccoli
+ */
+class ChunkEncoder implements Callable<byte[]>, Closeable {
+
+	private final short[] coefficients;
+	private final EntropyEncoder entropyEncoder;
+	
+	ChunkEncoder(final ContainerHeader header) {
+		// The quantized coefficients fit in 16 bits for cubes of up to ContainerHeader.MAX_CUBE_SIZE pixels.
+		this.coefficients = new short[header.getFrameSize() * header.cubeDepth];
+		this.entropyEncoder = EntropyEncoder.create(header);
+	}
+	
+	/**
+	 * @return Vector where the quantized coefficients of the slab must be stored,
+	 * in diagonal scan order, cube after cube.
+	 */
+	short[] getCoefficients() {
+		return coefficients;
+	}
+	
+	/**
+	 * Codes the quantized slab.
+	 * @return The chunk data.
+	 * @throws IOException If the coefficients can't be coded.
+	 */
+	@Override
+	public byte[] call() throws IOException {
+		return entropyEncoder.encode(coefficients);
+	}
+	
+	@Override
+	public void close() {
+		entropyEncoder.close();
+	}
+	
+}
@@ -0,0 +1,48 @@
+package br.jpiccoli.video;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal command line parser used by the codec programs.
+ *
+ * Arguments starting with "-" are options and must be followed by their value
+ * (for example "-transform reference"). All the other arguments are positional.
+ *
+ * @author Juliano Piccoli
+ */
+class CommandLine {
+
+	private final List<String> arguments = new ArrayList<>();
+	private final Map<String, String> options = new HashMap<>();
+	
+	CommandLine(final String[] args) {
+		for (int index = 0; index < args.length; index++) {
+			if (args[index].startsWith("-") && index + 1 < args.length) {
+				options.put(args[index].substring(1), args[++index]);
+			} else {
+				arguments.add(args[index]);
+			}
+		}
+	}
+	
+	int getArgumentsCount() {
+		return arguments.size();
+	}
+	
+	String getArgument(final int index) {
+		return arguments.get(index);
+	}
+	
+	String getOption(final String name, final String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+	
+	int getIntOption(final String name, final int defaultValue) {
+		final String value = options.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+	
+}
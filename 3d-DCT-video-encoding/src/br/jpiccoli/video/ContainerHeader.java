@@ -0,0 +1,217 @@
+package br.jpiccoli.video;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Header of the encoded video container.
+ *
+ * The container starts with this header, followed by one independently coded chunk per
+ * group of cubeDepth frames (GOP). The file ends with an index containing the offset and the
+ * quantizer scale of every chunk, followed by the offset of the index itself:
+ *
+ * [header] [chunk 0] [chunk 1] ... [chunk N-1] [chunks count] [offset 0] [scale 0] ... [offset N-1] [scale N-1] [index offset]
+ *
+ * The header itself is:
+ *
+ * [magic] [version] [width] [height] [cube width] [cube height] [cube depth] [quantizer] [frame count] [entropy coding]
+ * [scan x weight] [scan y weight] [scan z weight] [quantization step 0] ... [quantization step cubeSize-1] [color format]
+ *
+ * The quantizer scale multiplies the quantization steps of the chunk (see {@link QuantizationTable#scaled(int)}).
+ * It is selected by the rate control of the encoder.
+ *
+ * Color videos are stored as three planes: luma (Y) and the two chroma components (Cb and Cr), whose width and
+ * height are halved (4:2:0 subsampling) and rounded up to multiples of the cube dimensions. Each group of frames
+ * is stored as three consecutive chunks, one per plane, in this order.
+ *
+ * All values are stored in big-endian order.
+ *
+ * @author Juliano Piccoli
+ */
+class ContainerHeader {
+
+	static final int MAGIC = 0x33444354;	// "3DCT"
+	static final int VERSION = 1;
+	
+	/**
+	 * Largest number of pixels of a cube, used by the encoder and when reading a header. The orthonormal DCT
+	 * of a cube of 8 bits pixels is bounded by 255 * sqrt(cubeSize), so up to this size the quantized
+	 * coefficients always fit in 16 bits (see {@link ChunkEncoder#getCoefficients()}).
+	 */
+	static final int MAX_CUBE_SIZE = 1 << 14;
+	
+	/**
+	 * Entropy coding of the quantized coefficients: every coefficient of the diagonal scan
+	 * is coded with the signed Exp-Golomb code.
+	 */
+	static final int EXP_GOLOMB = 0;
+	
+	/**
+	 * Entropy coding of the quantized coefficients: the diagonal scan of each cube is coded as
+	 * (zero run, level) pairs followed by an end of block marker (see {@link ExpGolombEncoder}).
+	 */
+	static final int RUN_LENGTH = 1;
+	
+	/**
+	 * Entropy coding of the quantized coefficients: context adaptive binary arithmetic coding,
+	 * without the deflate compression (see {@link ArithmeticModel}).
+	 */
+	static final int ARITHMETIC = 2;
+	
+	/**
+	 * Color format: a single plane of 8 bits grayscale pixels.
+	 */
+	static final int GRAYSCALE = 0;
+	
+	/**
+	 * Color format: Y, Cb and Cr planes, with the chroma planes subsampled by 2 in both directions (see {@link YCbCr}).
+	 */
+	static final int YCBCR_420 = 1;
+	
+	int width;
+	int height;
+	int cubeWidth;
+	int cubeHeight;
+	int cubeDepth;
+	int quantizer;
+	int frameCount;
+	int entropyCoding = EXP_GOLOMB;
+	ScanOrder scanOrder = ScanOrder.DIAGONAL;
+	int colorFormat = GRAYSCALE;
+	
+	/**
+	 * Quantization steps. When not set, the linear table of the quantizer is used.
+	 */
+	QuantizationTable quantizationTable;
+	
+	int getFrameSize() {
+		return width * height;
+	}
+	
+	/**
+	 * @return Number of planes of each group of frames, and of chunks per group in the container.
+	 */
+	int getPlanesCount() {
+		return colorFormat == YCBCR_420 ? 3 : 1;
+	}
+	
+	/**
+	 * @param plane Index of the plane (0 for the luma or grayscale plane, 1 for Cb and 2 for Cr).
+	 * @return Header with the dimensions of the plane, used for coding its chunks.
+	 */
+	ContainerHeader getPlaneHeader(final int plane) {
+		if (plane == 0) {
+			return this;
+		}
+		final ContainerHeader planeHeader = new ContainerHeader();
+		planeHeader.width = roundUp((width + 1) / 2, cubeWidth);
+		planeHeader.height = roundUp((height + 1) / 2, cubeHeight);
+		planeHeader.cubeWidth = cubeWidth;
+		planeHeader.cubeHeight = cubeHeight;
+		planeHeader.cubeDepth = cubeDepth;
+		planeHeader.quantizer = quantizer;
+		planeHeader.frameCount = frameCount;
+		planeHeader.entropyCoding = entropyCoding;
+		planeHeader.scanOrder = scanOrder;
+		planeHeader.colorFormat = colorFormat;
+		planeHeader.quantizationTable = getQuantizationTable();
+		return planeHeader;
+	}
+	
+	private static int roundUp(final int value, final int multiple) {
+		return (value + multiple - 1) / multiple * multiple;
+	}
+	
+	/**
+	 * @return The quantization table of the video.
+	 */
+	QuantizationTable getQuantizationTable() {
+		if (quantizationTable == null) {
+			quantizationTable = QuantizationTable.linear(quantizer, cubeWidth, cubeHeight, cubeDepth);
+		}
+		return quantizationTable;
+	}
+	
+	/**
+	 * @return The scan table of the cubes of the video.
+	 */
+	ScanTable getScanTable() {
+		return CubeUtils.scanTable(cubeWidth, cubeHeight, cubeDepth, scanOrder);
+	}
+	
+	void write(final DataOutput output) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(width);
+		output.writeInt(height);
+		output.writeInt(cubeWidth);
+		output.writeInt(cubeHeight);
+		output.writeInt(cubeDepth);
+		output.writeInt(quantizer);
+		output.writeInt(frameCount);
+		output.writeInt(entropyCoding);
+		output.writeInt(scanOrder.getXWeight());
+		output.writeInt(scanOrder.getYWeight());
+		output.writeInt(scanOrder.getZWeight());
+		final QuantizationTable quantization = getQuantizationTable();
+		for (int index = 0; index < quantization.size(); index++) {
+			output.writeInt(quantization.getStep(index));
+		}
+		output.writeInt(colorFormat);
+	}
+	
+	static ContainerHeader read(final DataInput input) throws IOException {
+		if (input.readInt() != MAGIC) {
+			throw new IOException("The input is not a 3D DCT encoded video");
+		}
+		final int version = input.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported container version: " + version);
+		}
+		final ContainerHeader header = new ContainerHeader();
+		header.width = input.readInt();
+		header.height = input.readInt();
+		header.cubeWidth = input.readInt();
+		header.cubeHeight = input.readInt();
+		header.cubeDepth = input.readInt();
+		header.quantizer = input.readInt();
+		header.frameCount = input.readInt();
+		header.entropyCoding = input.readInt();
+		if (header.entropyCoding < EXP_GOLOMB || header.entropyCoding > ARITHMETIC) {
+			throw new IOException("Unsupported entropy coding: " + header.entropyCoding);
+		}
+		try {
+			header.scanOrder = new ScanOrder(input.readInt(), input.readInt(), input.readInt());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid scan order", e);
+		}
+		final long cubeSize = (long) header.cubeWidth * header.cubeHeight * header.cubeDepth;
+		if (header.cubeWidth < 1 || header.cubeHeight < 1 || header.cubeDepth < 1 || cubeSize > MAX_CUBE_SIZE) {
+			throw new IOException("Invalid cube dimensions");
+		}
+		// The frames are made of whole cubes, and each slab must fit in a single vector.
+		if (header.width < 1 || header.height < 1 || header.width % header.cubeWidth != 0 || header.height % header.cubeHeight != 0
+				|| (long) header.width * header.height * header.cubeDepth > Integer.MAX_VALUE) {
+			throw new IOException("Invalid frame dimensions: " + header.width + "x" + header.height);
+		}
+		if (header.frameCount < 0) {
+			throw new IOException("Invalid number of frames: " + header.frameCount);
+		}
+		final int[] steps = new int[(int) cubeSize];
+		for (int index = 0; index < steps.length; index++) {
+			steps[index] = input.readInt();
+		}
+		try {
+			header.quantizationTable = new QuantizationTable(steps);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid quantization table", e);
+		}
+		header.colorFormat = input.readInt();
+		if (header.colorFormat < GRAYSCALE || header.colorFormat > YCBCR_420) {
+			throw new IOException("Unsupported color format: " + header.colorFormat);
+		}
+		return header;
+	}
+	
+}
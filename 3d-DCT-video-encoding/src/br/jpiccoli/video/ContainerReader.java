@@ -0,0 +1,101 @@
+package br.jpiccoli.video;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads encoded videos in the container format described at {@link ContainerHeader}.
+ * Any chunk can be read directly, without reading the chunks that precede it.
+ *
+ * @author Juliano Piccoli
+ */
+class ContainerReader implements Closeable {
+
+	private final RandomAccessFile file;
+	private final ContainerHeader header;
+	private final long[] chunkOffsets;
+	private final int[] quantizerScales;
+	
+	/**
+	 * Opens the file and reads its header and index.
+	 * @param file Input file.
+	 * @throws IOException
+	 */
+	ContainerReader(final File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		try {
+			this.header = ContainerHeader.read(this.file);
+			final long headerEnd = this.file.getFilePointer();
+			final long length = this.file.length();
+			if (length - headerEnd < Integer.BYTES + Long.BYTES) {
+				throw new IOException("The container has no index. The encoding may not have been completed");
+			}
+			this.file.seek(length - Long.BYTES);
+			final long indexOffset = this.file.readLong();
+			if (indexOffset < headerEnd || indexOffset > length - Integer.BYTES - Long.BYTES) {
+				throw new IOException("The container has no index. The encoding may not have been completed");
+			}
+			this.file.seek(indexOffset);
+			final int chunksCount = this.file.readInt();
+			// Every group of cubeDepth frames is stored as one chunk per plane.
+			final long expectedChunks = ((long) header.frameCount + header.cubeDepth - 1) / header.cubeDepth * header.getPlanesCount();
+			if (chunksCount != expectedChunks || indexOffset + Integer.BYTES + (long) chunksCount * (Long.BYTES + Integer.BYTES) + Long.BYTES != length) {
+				throw new IOException("Invalid index: " + chunksCount + " chunks for " + header.frameCount + " frames");
+			}
+			// The offset of the index is also the end of the last chunk.
+			this.chunkOffsets = new long[chunksCount + 1];
+			this.quantizerScales = new int[chunksCount];
+			for (int index = 0; index < chunksCount; index++) {
+				chunkOffsets[index] = this.file.readLong();
+				if (chunkOffsets[index] < (index > 0 ? chunkOffsets[index - 1] : headerEnd) || chunkOffsets[index] > indexOffset) {
+					throw new IOException("Invalid chunk offset");
+				}
+				quantizerScales[index] = this.file.readInt();
+				if (quantizerScales[index] < 1) {
+					throw new IOException("Invalid quantizer scale");
+				}
+			}
+			chunkOffsets[chunksCount] = indexOffset;
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+	
+	ContainerHeader getHeader() {
+		return header;
+	}
+	
+	int getChunksCount() {
+		return chunkOffsets.length - 1;
+	}
+	
+	/**
+	 * @param chunk Index of the chunk.
+	 * @return Scale of the quantization steps of the chunk (see {@link QuantizationTable#scaled(int)}).
+	 */
+	int getQuantizerScale(final int chunk) {
+		return quantizerScales[chunk];
+	}
+	
+	/**
+	 * Reads a chunk.
+	 * @param chunk Index of the chunk.
+	 * @return The chunk data.
+	 * @throws IOException
+	 */
+	synchronized byte[] readChunk(final int chunk) throws IOException {
+		final byte[] data = new byte[(int) (chunkOffsets[chunk + 1] - chunkOffsets[chunk])];
+		file.seek(chunkOffsets[chunk]);
+		file.readFully(data);
+		return data;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+	
+}
@@ -0,0 +1,87 @@
+package br.jpiccoli.video;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes encoded videos in the container format described at {@link ContainerHeader}.
+ * The index is only written by {@link #finish()}, after the last chunk, so the file of an
+ * encoding that fails is rejected by {@link ContainerReader}.
+ *
+ * @author Juliano Piccoli
+ */
+class ContainerWriter implements Closeable {
+
+	private final DataOutputStream output;
+	private final List<Long> chunkOffsets = new ArrayList<>();
+	private final List<Integer> quantizerScales = new ArrayList<>();
+	private long position;
+	
+	/**
+	 * Creates the output file and writes the header.
+	 * @param file Output file.
+	 * @param header Video header.
+	 * @throws IOException
+	 */
+	ContainerWriter(final File file, final ContainerHeader header) throws IOException {
+		this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		header.write(output);
+		this.position = output.size();
+	}
+	
+	/**
+	 * Appends a chunk to the container.
+	 * @param data Vector containing the chunk data.
+	 * @param offset Offset of the first byte of the chunk.
+	 * @param length Length of the chunk.
+	 * @throws IOException
+	 */
+	void writeChunk(final byte[] data, final int offset, final int length) throws IOException {
+		writeChunk(data, offset, length, QuantizationTable.UNIT_SCALE);
+	}
+	
+	/**
+	 * Appends a chunk quantized with scaled quantization steps to the container.
+	 * @param data Vector containing the chunk data.
+	 * @param offset Offset of the first byte of the chunk.
+	 * @param length Length of the chunk.
+	 * @param quantizerScale Scale of the quantization steps of the chunk (see {@link QuantizationTable#scaled(int)}).
+	 * @throws IOException
+	 */
+	void writeChunk(final byte[] data, final int offset, final int length, final int quantizerScale) throws IOException {
+		chunkOffsets.add(position);
+		quantizerScales.add(quantizerScale);
+		output.write(data, offset, length);
+		position += length;
+	}
+	
+	/**
+	 * Writes the index. Must be called once, after the last chunk is written.
+	 * @throws IOException
+	 */
+	void finish() throws IOException {
+		final long indexOffset = position;
+		output.writeInt(chunkOffsets.size());
+		for (int chunk = 0; chunk < chunkOffsets.size(); chunk++) {
+			output.writeLong(chunkOffsets.get(chunk));
+			output.writeInt(quantizerScales.get(chunk));
+		}
+		output.writeLong(indexOffset);
+		output.flush();
+	}
+	
+	/**
+	 * Closes the output file. Without a call to {@link #finish()}, the file has no index.
+	 */
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+	
+}
@@ -1,43 +1,47 @@
 package br.jpiccoli.video;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class CubeUtils {
 
-	public static List<int[]> diagonalSlices(int width, int height, int depth) {
-		
-		List<int[]> positions = new ArrayList<>();
-		
-		int maxSum = (width - 1) + (height - 1) + (depth - 1);
-		
-		int x, y, z;
-		
-		for (int targetSum = 0; targetSum <= maxSum; targetSum++) {
-			
-			int maxWidth = Math.min(width - 1, targetSum);
-			int maxHeight = Math.min(height - 1, targetSum);
-			int maxDepth = Math.min(depth - 1, targetSum);
-			int minWidth = Math.max(0, targetSum - (maxHeight + maxDepth));
-			int minHeight = Math.max(0, targetSum - (maxWidth + maxDepth));
-			int minDepth = Math.max(0, targetSum - (maxHeight + maxWidth));
-			
-			int sum = 0;
-			
-			for (y = minHeight; y <= maxHeight; y++) {
-				for (z = minDepth; z <= maxDepth; z++) {
-					for (x = minWidth; x <= maxWidth; x++) {
-						sum = x + y + z;
-						if (sum == targetSum) {
-							positions.add(new int[] {x, y, z});
-						}
-					}
+	private static final ConcurrentMap<String, ScanTable> SCAN_TABLES = new ConcurrentHashMap<>();
+	
+	/**
+	 * Returns the diagonal scan table of the given cube dimensions (see {@link #scanTable(int, int, int, ScanOrder)}).
+	 */
+	public static ScanTable scanTable(int width, int height, int depth) {
+		return scanTable(width, height, depth, ScanOrder.DIAGONAL);
+	}
+	
+	/**
+	 * Returns the scan table of the given cube dimensions and scan order. The tables are computed
+	 * once and cached, so all the encoders and decoders of the same video share them.
+	 */
+	public static ScanTable scanTable(int width, int height, int depth, ScanOrder order) {
+		final String key = width + "x" + height + "x" + depth + "/" + order;
+		return SCAN_TABLES.computeIfAbsent(key, k -> createScanTable(width, height, depth, order));
+	}
+	
+	private static ScanTable createScanTable(int width, int height, int depth, ScanOrder order) {
+		final int size = width * height * depth;
+		// The sort key of each coefficient is unique, so sorting the keys, with the cube
+		// index in the lowest bits, gives the cube indexes in scan order.
+		final long[] keys = new long[size];
+		final int indexBits = Integer.SIZE - Integer.numberOfLeadingZeros(size);
+		for (int z = 0, index = 0; z < depth; z++) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++, index++) {
+					keys[index] = (order.sortKey(x, y, z, width, height, depth) << indexBits) | index;
 				}
 			}
-			
 		}
-		
-		return positions;
-		
+		Arrays.sort(keys);
+		final int[] forward = new int[size];
+		for (int index = 0; index < size; index++) {
+			forward[index] = (int) (keys[index] & ((1L << indexBits) - 1));
+		}
+		return new ScanTable(width, height, forward);
 	}
 	
 }
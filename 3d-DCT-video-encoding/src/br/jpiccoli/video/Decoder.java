@@ -1,119 +1,195 @@
 package br.jpiccoli.video;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import br.jpiccoli.video.dct.FastInverseDCT;
+import br.jpiccoli.video.dct.FloatInverseDCT;
 import br.jpiccoli.video.dct.InverseDCT;
+import br.jpiccoli.video.dct.TiledLayout;
+import br.jpiccoli.video.dct.Transform;
 
 public class Decoder {
 	
-	public static void main(String[] args) throws IOException, DataFormatException, InterruptedException {
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
 		
-		if (args.length < 5) {
-			System.out.println("Usage: java Decoder <input file> <output file> <frame width> <frame height> <number of frames to decode>");
-			System.out.println("All parameters are mandatory");
+		CommandLine commandLine = new CommandLine(args);
+		
+		if (commandLine.getArgumentsCount() < 2) {
+			System.out.println("Usage: java Decoder <input file> <output file> [-start <first frame>] [-frames <number of frames to decode>] [-transform fast|float|reference] [-workers <count>]");
+			System.out.println("Parameters <input file> and <output file> are mandatory");
+			System.out.println("Options -start and -frames select the frames to decode. They are rounded to groups of frames (GOPs) of the encoded video");
+			System.out.println("Option -transform selects the separable fast inverse DCT (default), its single precision version or the reference inverse DCT implementation");
+			System.out.println("Option -workers sets how many chunks are entropy decoded in parallel (default: number of processors)");
 			System.exit(-1);
 		}
 		
 		System.out.println("Starting");
 		
-		File inputFile = new File(args[0]);
-		int width = Integer.parseInt(args[2]);
-		int height = Integer.parseInt(args[3]);
-		int depth = Integer.parseInt(args[4]);
-		int cubeWidth = 8;
-		int cubeHeight = 8;
-		int cubeDepth = 8;
-		int frameSize = width * height;
-		
-		// Depth must be a multiple of blockSize.
-		int exceedingFrames = depth % cubeDepth;
-		depth -= exceedingFrames;
-		
-		// Read and inflate the input file contents. The inflated
-		// data will be fully stored in memory.
-		System.out.println("Reading and inflating the input file");
-		FileInputStream inputStream = new FileInputStream(inputFile);
-		ByteArrayOutputStream memoryStream = new ByteArrayOutputStream();
-		byte[] inputBuffer = new byte[1024 * 1024];
-		byte[] inflatedDataBuffer = new byte[width * height];
-		Inflater inflater = new Inflater();
-		int readResult = inputStream.read(inputBuffer);
-		while(readResult > 0) {
-			inflater.setInput(inputBuffer, 0, readResult);
-			int inflatedLength = inflater.inflate(inflatedDataBuffer);
-			while(inflatedLength != 0) {
-				memoryStream.write(inflatedDataBuffer, 0, inflatedLength);
-				inflatedLength = inflater.inflate(inflatedDataBuffer);
-			}
-			readResult = inputStream.read(inputBuffer);
+		File inputFile = new File(commandLine.getArgument(0));
+		String transformName = commandLine.getOption("transform", "fast");
+		int workers = commandLine.getIntOption("workers", Runtime.getRuntime().availableProcessors());
+		int startFrame = commandLine.getIntOption("start", 0);
+		if (startFrame < 0 || commandLine.getIntOption("frames", 0) < 0) {
+			System.out.println("Invalid frame range. Options -start and -frames can't be negative");
+			System.exit(-1);
 		}
-		inputStream.close();
-		inflater.end();
-		inflatedDataBuffer = memoryStream.toByteArray();
-		memoryStream.close();
 		
-		// Read the Exp-Golomb coded data.
-		System.out.println("Decoding the Exp-Golomb encoded data");
-		ExpGolombReader expGolombReader = new ExpGolombReader();
-		expGolombReader.setInput(inflatedDataBuffer);
+		// The video dimensions are read from the container header.
+		ContainerReader container = new ContainerReader(inputFile);
+		ContainerHeader header = container.getHeader();
+		int width = header.width;
+		int height = header.height;
+		int cubeWidth = header.cubeWidth;
+		int cubeHeight = header.cubeHeight;
+		int cubeDepth = header.cubeDepth;
+		int frameSize = header.getFrameSize();
 		
-		List<int[]> positions = CubeUtils.diagonalSlices(cubeWidth, cubeHeight, cubeDepth);
+		// Each slab of cubeDepth frames is stored as one chunk per plane (Y, Cb and Cr for color
+		// videos), so each slab can be read directly.
+		int planes = header.getPlanesCount();
+		int slabsCount = container.getChunksCount() / planes;
+		int firstChunk = Math.min(startFrame / cubeDepth, slabsCount);
+		int framesToDecode = commandLine.getIntOption("frames", header.frameCount);
+		int lastChunk = Math.min(firstChunk + (framesToDecode + cubeDepth - 1) / cubeDepth, slabsCount);
 		
-		double[] quantizationInput = new double[width * height * depth];
-		final int cubeFaceSize = cubeWidth * cubeHeight;
-		final int blockLength = cubeFaceSize * cubeDepth;
-		for (int offset = 0; offset < quantizationInput.length; offset += blockLength) {
-			for (int index = 0; index < positions.size(); index++) {
-				int[] position = positions.get(index);
-				quantizationInput[offset + position[0] + (position[1] * cubeWidth) + (position[2] * cubeFaceSize)] = expGolombReader.readValue();
-			}
+		System.out.println("Video dimensions: " + width + "x" + height + ", " + header.frameCount + " frames, cubes of " + cubeWidth + "x" + cubeHeight + "x" + cubeDepth + " pixels" + (planes > 1 ? ", YCbCr 4:2:0" : ""));
+		
+		// The video is decoded in slabs of cubeDepth frames, one container chunk each.
+		// Up to "workers" chunks are entropy decoded and dequantized in
+		// parallel by chunk decoders, while the slabs that are already decoded are
+		// inverse transformed and written in order, so the memory usage does not
+		// depend on the video length.
+		// The planes of color videos are inverse transformed at the same time, and the RGB
+		// frames are rebuilt from them as they are written (see YCbCr).
+		ContainerHeader[] planeHeaders = new ContainerHeader[planes];
+		double[][] videoPixels = new double[planes][];
+		byte[][] outputData = new byte[planes][];
+		TiledLayout[] tiledLayouts = new TiledLayout[planes];
+		for (int plane = 0; plane < planes; plane++) {
+			planeHeaders[plane] = header.getPlaneHeader(plane);
+			int planeWidth = planeHeaders[plane].width;
+			int planeHeight = planeHeaders[plane].height;
+			videoPixels[plane] = new double[planeHeaders[plane].getFrameSize() * cubeDepth];
+			outputData[plane] = new byte[planeHeaders[plane].getFrameSize()];
+			tiledLayouts[plane] = new TiledLayout(planeWidth, planeHeight, cubeWidth, cubeHeight, cubeDepth);
 		}
-
-		double[] dctCoeffMatrix = new double[width * height * depth];
-		int quantizationInputPosition = 0;
-		// Dequantize the DCT cubes
-		System.out.println("Dequantizing cubes");
-		for (int z = 0; z < depth; z += cubeDepth) {
-			for (int y = 0; y < height; y += cubeHeight) {
-				for (int x = 0; x < width; x += cubeWidth) {
-					for (int k = 0; k < cubeDepth; k++) {
-						for (int i = 0; i < cubeHeight; i++) {
-							for (int j = 0; j < cubeWidth; j++) {
-								int dctCoeffCubePosition = (z + k) * frameSize + (y + i) * width + x + j;
-								dctCoeffMatrix[dctCoeffCubePosition] = Math.round(quantizationInput[quantizationInputPosition] * Math.max(1, 5 * (i + j + k)));
-								quantizationInputPosition++;
-							}
-						}
-					}
+		YCbCr colorConverter = planes > 1 ? new YCbCr(width, height, planeHeaders[1].width, planeHeaders[1].height) : null;
+		byte[] rgbFrame = planes > 1 ? new byte[frameSize * 3] : null;
+		
+		// Each chunk decoder has its own transform instance, whose input vector is the
+		// slab buffer of the decoder. The instances are reused by all slabs.
+		// The slabs are decoded and transformed in the tiled layout, in which the samples of
+		// each cube are contiguous, and converted to raster order when the frames are written.
+		// The reference implementation is slow; the separable one is the default.
+		ChunkDecoder[][] chunkDecoders = new ChunkDecoder[workers][planes];
+		Transform[][] inverseDCTs = new Transform[workers][planes];
+		for (int index = 0; index < workers; index++) {
+			for (int plane = 0; plane < planes; plane++) {
+				int planeWidth = planeHeaders[plane].width;
+				int planeHeight = planeHeaders[plane].height;
+				chunkDecoders[index][plane] = new ChunkDecoder(container, planeHeaders[plane]);
+				double[] dctCoeffMatrix = chunkDecoders[index][plane].getCoefficients();
+				Transform inverseDCT;
+				if (transformName.equalsIgnoreCase("reference")) {
+					inverseDCT = new InverseDCT(dctCoeffMatrix, videoPixels[plane], planeWidth, planeHeight, cubeWidth, cubeHeight, cubeDepth);
+				} else if (transformName.equalsIgnoreCase("float")) {
+					inverseDCT = new FloatInverseDCT(dctCoeffMatrix, videoPixels[plane], planeWidth, planeHeight, cubeWidth, cubeHeight, cubeDepth);
+				} else {
+					inverseDCT = new FastInverseDCT(dctCoeffMatrix, videoPixels[plane], planeWidth, planeHeight, cubeWidth, cubeHeight, cubeDepth);
 				}
+				inverseDCT.setLayout(Transform.Layout.TILED);
+				// The cubes that only contain the DC coefficient are filled without being transformed.
+				inverseDCT.setDCOnlyBlocks(chunkDecoders[index][plane].getDCOnlyBlocks());
+				inverseDCTs[index][plane] = inverseDCT;
 			}
 		}
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		ExecutorService planeExecutor = Executors.newFixedThreadPool(planes);
+		ExecutorService chunkExecutor = Executors.newFixedThreadPool(workers * planes);
+		Deque<Future<double[]>> pendingChunks = new ArrayDeque<>();
 		
-		// Apply the Inverse DCT to the dequantized data. This call is blocking and
-		// the process is slow.
-		System.out.println("Applying inverse DCT. This process may take some time to complete...");
-		double[] videoPixels = new double[dctCoeffMatrix.length];
-		InverseDCT inverseDCT = new InverseDCT(dctCoeffMatrix, videoPixels, width, height, cubeWidth, cubeHeight, cubeDepth);
-		inverseDCT.run();
+		System.out.println("Decoding. This process may take some time to complete...");
 		
-		// Writing decoded data to output file
-		System.out.println("Writing video to output file");
-		File outputFile = new File(args[1]);
+		File outputFile = new File(commandLine.getArgument(1));
 		try (FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-			byte[] outputData = new byte[width * height];
-			for (int offset = 0; offset < videoPixels.length; offset += outputData.length) {
-				for (int index = 0; index < outputData.length; index++) {
-					outputData[index] = (byte) videoPixels[offset + index];
+			
+			int nextChunk = firstChunk;
+			for (int chunk = firstChunk; chunk < lastChunk; chunk++) {
+				
+				// Keeping up to "workers" chunks being decoded ahead of the current one.
+				// The decoder of a chunk is only reused after its slab is written.
+				while (nextChunk < lastChunk && nextChunk < chunk + workers) {
+					for (int plane = 0; plane < planes; plane++) {
+						ChunkDecoder chunkDecoder = chunkDecoders[(nextChunk - firstChunk) % workers][plane];
+						chunkDecoder.setChunk(nextChunk * planes + plane);
+						pendingChunks.addLast(chunkExecutor.submit(chunkDecoder));
+					}
+					nextChunk++;
+				}
+				for (int plane = 0; plane < planes; plane++) {
+					pendingChunks.removeFirst().get();
+				}
+				
+				// Apply the Inverse DCT to the dequantized data. This call blocks
+				// until the slab is completed.
+				Transform[] slabTransforms = inverseDCTs[(chunk - firstChunk) % workers];
+				if (planes > 1) {
+					// The cubes of all the planes are dispatched to the same executor.
+					List<Callable<Void>> planeTasks = new ArrayList<>(planes);
+					for (Transform inverseDCT : slabTransforms) {
+						planeTasks.add(() -> {
+							inverseDCT.run(executor);
+							return null;
+						});
+					}
+					for (Future<Void> planeTask : planeExecutor.invokeAll(planeTasks)) {
+						planeTask.get();
+					}
+				} else {
+					slabTransforms[0].run(executor);
 				}
-				outputStream.write(outputData);
+				
+				// Writing decoded frames to output file. The last slab may have been completed
+				// with copies of the last frame of the video, which are not written.
+				int slabFrames = Math.min(cubeDepth, header.frameCount - chunk * cubeDepth);
+				for (int frame = 0; frame < slabFrames; frame++) {
+					for (int plane = 0; plane < planes; plane++) {
+						tiledLayouts[plane].toRaster(videoPixels[plane], frame, outputData[plane]);
+					}
+					if (colorConverter != null) {
+						colorConverter.toRGB(outputData[0], outputData[1], outputData[2], rgbFrame);
+						outputStream.write(rgbFrame);
+					} else {
+						outputStream.write(outputData[0]);
+					}
+				}
+				
+				System.out.println("Frames decoded: " + ((chunk - firstChunk) * cubeDepth + slabFrames));
+				
 			}
+			
 			outputStream.flush();
+			
+		} finally {
+			executor.shutdown();
+			planeExecutor.shutdown();
+			chunkExecutor.shutdownNow();
+			for (ChunkDecoder[] planeDecoders : chunkDecoders) {
+				for (ChunkDecoder chunkDecoder : planeDecoders) {
+					chunkDecoder.close();
+				}
+			}
+			container.close();
 		}
 		
 		System.out.println("Complete!");
@@ -2,129 +2,279 @@ package br.jpiccoli.video;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.zip.Deflater;
-
-import br.jpiccoli.video.dct.DCT;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Encoder {
 
-	public static void main(String[] args) throws IOException, InterruptedException {
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		
+		CommandLine commandLine = new CommandLine(args);
 		
-		if (args.length < 4) {
-			System.out.println("Usage: java Encoder <input file> <output file> <frame width> <frame height> <number of frames to encode");
+		if (commandLine.getArgumentsCount() < 4) {
+			System.out.println("Usage: java Encoder <input file> <output file> <frame width> <frame height> <number of frames to encode> [-cube <width>x<height>x<depth>] [-transform fast|float|reference] [-entropy expgolomb|runlength|arithmetic] [-scan diagonal|spatial|temporal] [-quantizer <step> | -quality <1-100>] [-bitrate <bits per second> [-fps <frames per second>] [-passes 1|2]] [-workers <count>] [-color grayscale|ycbcr420]");
 			System.out.println("Parameters <input file>, <output file>, <frame width>, <frame height> are mandatory");
+			System.out.println("Option -cube sets the dimensions of the transform blocks (default 8x8x8). The frame dimensions must be multiples of the block width and height. Deeper blocks (8x8x16, 8x8x32) compress static content better, since each group of frames is longer; smaller blocks (4x4x4) use less memory and have lower latency");
+			System.out.println("Option -transform selects the separable fast DCT (default), its single precision version or the reference DCT implementation");
+			System.out.println("Option -entropy selects how the quantized coefficients are coded: each one with the Exp-Golomb code (default), as runs of zeroes followed by non zero levels, or with a context adaptive arithmetic coder (smallest files)");
+			System.out.println("Option -scan selects the order of the coefficients of each cube: diagonal slices (default), spatial frequencies first or temporal frequencies first");
+			System.out.println("Option -quantizer sets the quantization step (default 5). Greater values result in smaller files and lower quality");
+			System.out.println("Option -quality sets the quantization steps as a quality level instead (50 is the default quantizer). Lower values result in smaller files, faster coding and lower quality");
+			System.out.println("Option -bitrate enables the rate control: the quantization steps are scaled for each group of frames so the video approaches the given bit rate at the frame rate set by -fps (default 30). The steps set by -quantizer or -quality are the starting point");
+			System.out.println("Option -passes 2 codes each group of frames twice with the rate control, reusing its DCT, so the size of each group is closer to the target");
+			System.out.println("Option -workers sets how many slabs of frames are entropy coded in parallel (default: number of processors)");
+			System.out.println("Option -color ycbcr420 encodes a color video: the input holds interleaved RGB frames (3 bytes per pixel, as written by CaptureScreen), which are coded as a luma plane and two chroma planes subsampled by 2 in both directions. The rate control is only available for grayscale videos");
 			System.exit(-1);
 		}
 		
 		System.out.println("Starting");
 		
-		File inputFile = new File(args[0]);
-		int width = Integer.parseInt(args[2]);
-		int height = Integer.parseInt(args[3]);
+		File inputFile = new File(commandLine.getArgument(0));
+		int width = Integer.parseInt(commandLine.getArgument(2));
+		int height = Integer.parseInt(commandLine.getArgument(3));
 		int depth = 0;
-		int cubeWidth = 8;
-		int cubeHeight = 8;
-		int cubeDepth = 8;
+		String[] cubeDimensions = commandLine.getOption("cube", "8x8x8").toLowerCase().split("x");
+		if (cubeDimensions.length != 3) {
+			System.out.println("Invalid cube dimensions. Expected <width>x<height>x<depth>");
+			System.exit(-1);
+		}
+		int cubeWidth = Integer.parseInt(cubeDimensions[0]);
+		int cubeHeight = Integer.parseInt(cubeDimensions[1]);
+		int cubeDepth = Integer.parseInt(cubeDimensions[2]);
+		if (cubeWidth < 1 || cubeHeight < 1 || cubeDepth < 1 || (long) cubeWidth * cubeHeight * cubeDepth > ContainerHeader.MAX_CUBE_SIZE) {
+			System.out.println("Invalid cube dimensions. Cubes can have up to " + ContainerHeader.MAX_CUBE_SIZE + " pixels");
+			System.exit(-1);
+		}
+		if (width % cubeWidth != 0 || height % cubeHeight != 0) {
+			System.out.println("The frame dimensions must be multiples of the cube width and height (CaptureScreen pads the frames accordingly)");
+			System.exit(-1);
+		}
 		int frameSize = width * height;
-		if (args.length >= 4) {
-			depth = Integer.parseInt(args[4]);
+		String colorName = commandLine.getOption("color", "grayscale");
+		boolean color = colorName.equalsIgnoreCase("ycbcr420");
+		if (!color && !colorName.equalsIgnoreCase("grayscale")) {
+			System.out.println("Invalid color format. Expected grayscale or ycbcr420");
+			System.exit(-1);
+		}
+		if (commandLine.getArgumentsCount() > 4) {
+			depth = Integer.parseInt(commandLine.getArgument(4));
 		} else {
-			depth = (int) (inputFile.length() / frameSize);
+			depth = (int) (inputFile.length() / (color ? frameSize * 3 : frameSize));
+		}
+		String transformName = commandLine.getOption("transform", "fast");
+		String entropyName = commandLine.getOption("entropy", "expgolomb");
+		ScanOrder scanOrder = ScanOrder.forName(commandLine.getOption("scan", "diagonal"));
+		int quantizer = commandLine.getIntOption("quantizer", 5);
+		int quality = commandLine.getIntOption("quality", 0);
+		int workers = commandLine.getIntOption("workers", Runtime.getRuntime().availableProcessors());
+		int bitRate = commandLine.getIntOption("bitrate", 0);
+		int framesPerSecond = commandLine.getIntOption("fps", 30);
+		int passes = commandLine.getIntOption("passes", 1);
+		if (color && bitRate > 0) {
+			System.out.println("The rate control is only available for grayscale videos");
+			System.exit(-1);
 		}
 		
-		// Depth must be a multiple of blockSize.
-		int exceedingFrames = depth % cubeDepth;
-		depth -= exceedingFrames;
-		
-		System.out.println("Reading input file");
+		ContainerHeader header = new ContainerHeader();
+		header.width = width;
+		header.height = height;
+		header.cubeWidth = cubeWidth;
+		header.cubeHeight = cubeHeight;
+		header.cubeDepth = cubeDepth;
+		header.quantizer = quantizer;
+		if (quality > 0) {
+			// The header quantizer is informative; the decoder uses the table.
+			header.quantizer = (int) Math.round(QuantizationTable.getQuantizer(quality));
+			header.quantizationTable = QuantizationTable.forQuality(quality, cubeWidth, cubeHeight, cubeDepth);
+		}
+		header.frameCount = depth;
+		header.scanOrder = scanOrder;
+		if (entropyName.equalsIgnoreCase("arithmetic")) {
+			header.entropyCoding = ContainerHeader.ARITHMETIC;
+		} else if (entropyName.equalsIgnoreCase("runlength")) {
+			header.entropyCoding = ContainerHeader.RUN_LENGTH;
+		} else {
+			header.entropyCoding = ContainerHeader.EXP_GOLOMB;
+		}
+		if (color) {
+			header.colorFormat = ContainerHeader.YCBCR_420;
+		}
 		
-		// Reading the input file. This is not exactly the best
-		// approach since the full file is stored into memory, which
-		// limits the maximum file size...
-		byte[] buffer = new byte[width * height * depth];
-		DataInputStream input = new DataInputStream(new FileInputStream(inputFile));
-		input.readFully(buffer);
-		input.close();
-		double[] pixels = new double[buffer.length];
-		double[] dctCoeff = new double[buffer.length];
-		for (int i = 0; i < buffer.length; i++) {
-			int pixelValue = (int) (buffer[i] & 0xFF);
-			pixels[i] = pixelValue;
+		// The video is processed in slabs of cubeDepth frames. Each cube of a slab is
+		// transformed, quantized and scanned in a single task (see SlabEncoder), and the
+		// quantized coefficients are handed to a chunk encoder that applies the entropy
+		// coding (see EntropyEncoder) in a worker thread, while the next slab is read
+		// and transformed. Up to "workers" slabs are coded at the same time, so the memory
+		// usage does not depend on the video length.
+		// Each slab is stored as an independent chunk of the output container, in order.
+		// With the rate control, each slab is transformed before the previous chunk is written,
+		// and quantized after it, with the quantizer scale selected from the size of the previous
+		// chunk (see RateController). Only one chunk is coded at a time in this mode. The DCT
+		// coefficients of the slab are kept, so the second pass only quantizes and codes it again.
+		// Two slab buffers are used alternately, so each slab can be compared with the
+		// previous one and the cubes that didn't change are not transformed again.
+		// Color videos are read as interleaved RGB frames, which are converted to the Y, Cb and Cr
+		// planes as they are read (see YCbCr). The planes of each slab are transformed at the same
+		// time, and each one is stored as a chunk, in the order Y, Cb, Cr.
+		int planes = header.getPlanesCount();
+		ContainerHeader[] planeHeaders = new ContainerHeader[planes];
+		byte[][][] buffers = new byte[planes][][];
+		SlabEncoder[] slabEncoders = new SlabEncoder[planes];
+		for (int plane = 0; plane < planes; plane++) {
+			planeHeaders[plane] = header.getPlaneHeader(plane);
+			int planeSlabSize = planeHeaders[plane].getFrameSize() * cubeDepth;
+			buffers[plane] = new byte[][] { new byte[planeSlabSize], new byte[planeSlabSize] };
+			slabEncoders[plane] = new SlabEncoder(planeHeaders[plane], transformName);
 		}
+		YCbCr colorConverter = planes > 1 ? new YCbCr(width, height, planeHeaders[1].width, planeHeaders[1].height) : null;
+		byte[] rgbFrame = planes > 1 ? new byte[frameSize * 3] : null;
 		
-		System.out.println("Applying DCT. This process may take some time to complete...");
+		int slabSize = frameSize * cubeDepth;
+		RateController rateController = bitRate > 0 ? new RateController(bitRate, framesPerSecond, cubeDepth) : null;
+		float[] transformed = rateController != null ? new float[slabSize] : null;
+		int pendingScale = QuantizationTable.UNIT_SCALE;
 		
-		// Applying DCT. This call blocks until the DCT is completed.
-		// The process is executed in multiple threads, but it is
-		// still VERY slow.
-		DCT dct = new DCT(pixels, dctCoeff, width, height, cubeWidth, cubeHeight, cubeDepth);
-		dct.run();
-				
-		System.out.println("DCT complete. Applying quantization.");
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		ExecutorService planeExecutor = Executors.newFixedThreadPool(planes);
 		
-		pixels = null;
-		double[] quantizationOutput = new double[buffer.length];
-		int quantizationOutputIndex = 0;
+		ChunkEncoder[][] chunkEncoders = new ChunkEncoder[workers][planes];
+		for (int index = 0; index < workers; index++) {
+			for (int plane = 0; plane < planes; plane++) {
+				chunkEncoders[index][plane] = new ChunkEncoder(planeHeaders[plane]);
+			}
+		}
+		ExecutorService chunkExecutor = Executors.newFixedThreadPool(workers);
+		Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+		
+		System.out.println("Encoding. This process may take some time to complete...");
 		
-		// Quantization of the DCT output. This process divides each sample
-		// of the DCT cube by five times the sum of its coordinates in the cube.
-		// This turns most of the higher frequencies to zero.
-		for (int z = 0; z < depth; z += cubeDepth) {
-			for (int y = 0; y < height; y += cubeHeight) {
-				for (int x = 0; x < width; x += cubeWidth) {
-					for (int k = 0; k < cubeDepth; k++) {
-						for (int i = 0; i < cubeHeight; i++) {
-							for (int j = 0; j < cubeWidth; j++) {
-								int dctCoeffCubePosition = (z + k) * frameSize + (y + i) * width + x + j;
-								quantizationOutput[quantizationOutputIndex] = Math.round(dctCoeff[dctCoeffCubePosition] / Math.max(1, 5 * (i + j + k)));
-								quantizationOutputIndex++;
-							}
+		try (DataInputStream input = new DataInputStream(new FileInputStream(inputFile));
+				ContainerWriter output = new ContainerWriter(new File(commandLine.getArgument(1)), header)) {
+			
+			for (int frame = 0, chunk = 0; frame < depth; frame += cubeDepth, chunk++) {
+				
+				// The last slab is completed by repeating its last frame, so no frame is dropped.
+				// The header holds the real number of frames, and the decoder only writes those.
+				int slabFrames = Math.min(cubeDepth, depth - frame);
+				if (colorConverter != null) {
+					for (int slabFrame = 0; slabFrame < slabFrames; slabFrame++) {
+						input.readFully(rgbFrame);
+						colorConverter.fromRGB(rgbFrame, slabFrame, buffers[0][chunk % 2], buffers[1][chunk % 2], buffers[2][chunk % 2]);
+					}
+				} else {
+					input.readFully(buffers[0][chunk % 2], 0, slabFrames * frameSize);
+				}
+				for (int plane = 0; plane < planes; plane++) {
+					int planeFrameSize = planeHeaders[plane].getFrameSize();
+					for (int padding = slabFrames; padding < cubeDepth; padding++) {
+						System.arraycopy(buffers[plane][chunk % 2], (slabFrames - 1) * planeFrameSize, buffers[plane][chunk % 2], padding * planeFrameSize, planeFrameSize);
+					}
+				}
+				
+				if (rateController != null) {
+					
+					byte[] buffer = buffers[0][chunk % 2];
+					byte[] previousBuffer = chunk > 0 ? buffers[0][(chunk - 1) % 2] : null;
+					slabEncoders[0].transform(buffer, previousBuffer, transformed, executor);
+					if (!pendingChunks.isEmpty()) {
+						byte[] chunkData = pendingChunks.removeFirst().get();
+						output.writeChunk(chunkData, 0, chunkData.length, pendingScale);
+						rateController.addChunk(pendingScale, chunkData.length);
+					}
+					ChunkEncoder chunkEncoder = chunkEncoders[chunk % workers][0];
+					
+					pendingScale = rateController.getScale();
+					slabEncoders[0].quantize(transformed, chunkEncoder.getCoefficients(), pendingScale);
+					if (passes > 1) {
+						byte[] firstPass = chunkEncoder.call();
+						int refinedScale = rateController.estimateScale(pendingScale, firstPass.length);
+						if (rateController.isOnTarget(firstPass.length) || refinedScale == pendingScale) {
+							pendingChunks.addLast(CompletableFuture.completedFuture(firstPass));
+						} else {
+							rateController.addFirstPass(pendingScale, firstPass.length);
+							pendingScale = refinedScale;
+							slabEncoders[0].quantize(transformed, chunkEncoder.getCoefficients(), pendingScale);
+							pendingChunks.addLast(chunkExecutor.submit(chunkEncoder));
 						}
+					} else {
+						pendingChunks.addLast(chunkExecutor.submit(chunkEncoder));
 					}
+					
+					System.out.println("Frames encoded: " + (frame + slabFrames) + ", quantizer scale: " + (float) pendingScale / QuantizationTable.UNIT_SCALE);
+					continue;
+					
+				}
+				
+				// The chunk encoders used "workers" slabs ago are reused. Their chunks are
+				// the oldest pending ones, which are written before the encoders are reused.
+				if (pendingChunks.size() == workers * planes) {
+					for (int plane = 0; plane < planes; plane++) {
+						byte[] chunkData = pendingChunks.removeFirst().get();
+						output.writeChunk(chunkData, 0, chunkData.length);
+					}
+				}
+				
+				// Applying DCT and quantization. This call blocks until the slab is completed.
+				// The process is executed in multiple threads. The reference
+				// implementation is VERY slow; the separable one is the default.
+				// The coefficients of the previous slab are only read while its chunk is coded.
+				// The cubes of all the planes are dispatched to the same executor.
+				List<Callable<Void>> planeTasks = new ArrayList<>(planes);
+				for (int plane = 0; plane < planes; plane++) {
+					SlabEncoder slabEncoder = slabEncoders[plane];
+					byte[] buffer = buffers[plane][chunk % 2];
+					byte[] previousBuffer = chunk > 0 ? buffers[plane][(chunk - 1) % 2] : null;
+					short[] coefficients = chunkEncoders[chunk % workers][plane].getCoefficients();
+					short[] previousCoefficients = chunk > 0 ? chunkEncoders[(chunk - 1) % workers][plane].getCoefficients() : null;
+					planeTasks.add(() -> {
+						slabEncoder.encode(buffer, previousBuffer, coefficients, previousCoefficients, executor);
+						return null;
+					});
+				}
+				for (Future<Void> planeTask : planeExecutor.invokeAll(planeTasks)) {
+					planeTask.get();
 				}
+				for (int plane = 0; plane < planes; plane++) {
+					pendingChunks.addLast(chunkExecutor.submit(chunkEncoders[chunk % workers][plane]));
+				}
+				
+				System.out.println("Frames encoded: " + (frame + slabFrames));
+				
 			}
-		}
-		
-		System.out.println("Compressing the resulting data");
-		
-		buffer = null;
-		buffer = new byte[width * height * depth];
-		
-		// The DCT Coefficients inside the cubes are listed in diagonal slices to maximize the lengths
-		// of the zeroes sequences. This increases the efficiency of the deflate compressor.
-		List<int[]> positions = CubeUtils.diagonalSlices(cubeWidth, cubeHeight, cubeDepth);
-		
-		// Applying Exp-Golomb coding to the quantized data.
-		ExpGolombWriter writer = new ExpGolombWriter();
-		writer.setOutput(buffer);
-		int blockLength = cubeWidth * cubeHeight * cubeDepth;
-		int cubeFaceSize = cubeWidth * cubeHeight;
-		for (int offset = 0; offset < quantizationOutput.length; offset += blockLength) {
-			for (int index = 0; index < positions.size(); index++) {
-				int[] position = positions.get(index);
-				int dctCoeffInt = (int) quantizationOutput[offset + position[0] + (position[1] * cubeWidth) + (position[2] * cubeFaceSize)];
-				writer.writeValue(dctCoeffInt);
+			
+			// Without the rate control, the scale of every chunk is the unit scale.
+			while (!pendingChunks.isEmpty()) {
+				byte[] chunkData = pendingChunks.removeFirst().get();
+				output.writeChunk(chunkData, 0, chunkData.length, pendingScale);
+			}
+			// The index is only written when every chunk was written.
+			output.finish();
+			
+		} finally {
+			executor.shutdown();
+			planeExecutor.shutdown();
+			chunkExecutor.shutdownNow();
+			for (ChunkEncoder[] planeEncoders : chunkEncoders) {
+				for (ChunkEncoder chunkEncoder : planeEncoders) {
+					chunkEncoder.close();
+				}
 			}
 		}
 		
-		// Deflating the Exp-Golomb coded data.
-		FileOutputStream output = new FileOutputStream(args[1]);
-		byte[] outputBuffer = new byte[width * height];
-		Deflater deflater = new Deflater();
-		deflater.setInput(buffer, 0, writer.getBufferPosition() + 1);
-		deflater.finish();
-		int deflatedLength = deflater.deflate(outputBuffer);
-		while(deflatedLength != 0) {
-			output.write(outputBuffer, 0, deflatedLength);
-			deflatedLength = deflater.deflate(outputBuffer);
+		long skippedCubes = 0;
+		for (SlabEncoder slabEncoder : slabEncoders) {
+			skippedCubes += slabEncoder.getSkippedCubes();
 		}
-		output.flush();
-		output.close();
-		
-		System.out.println("Finished. Frames encoded: " + depth);
+		System.out.println("Finished. Frames encoded: " + depth + ", cubes not transformed: " + skippedCubes);
 		
 	}
 	
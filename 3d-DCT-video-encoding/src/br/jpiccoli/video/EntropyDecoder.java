@@ -0,0 +1,53 @@
+package br.jpiccoli.video;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Entropy decoder of the quantized coefficients of a chunk (see {@link EntropyEncoder}).
+ *
+ * After {@link #setInput(byte[])}, the cubes of the chunk are decoded one at a time, in the
+ * order they were coded, by {@link #readCube(int[])}.
+ *
+ * Instances own their buffers and are reused for multiple chunks, so they must not be shared among threads.
+ *
+ * @author Juliano Piccoli
+ */
+interface EntropyDecoder extends Closeable {
+
+	/**
+	 * Starts decoding a chunk.
+	 * @param chunkData The chunk data.
+	 * @throws IOException If the chunk data is invalid.
+	 */
+	void setInput(byte[] chunkData) throws IOException;
+	
+	/**
+	 * Decodes the next cube of the chunk.
+	 * @param coefficients Vector where the quantized coefficients of the cube are stored, in diagonal scan order.
+	 * @return Length of the coded part of the cube: every coefficient at or after this position of the scan is zero.
+	 * Cubes that only contain the DC coefficient have length 1 (or 0, if the DC is also zero).
+	 * @throws IOException If the chunk data is invalid.
+	 */
+	int readCube(int[] coefficients) throws IOException;
+	
+	/**
+	 * Releases the resources used by the decoder.
+	 */
+	@Override
+	void close();
+	
+	/**
+	 * Creates the entropy decoder selected by the header.
+	 * @param header Video header.
+	 * @return The entropy decoder.
+	 */
+	static EntropyDecoder create(final ContainerHeader header) {
+		if (header.entropyCoding == ContainerHeader.ARITHMETIC) {
+			return new ArithmeticDecoder(header);
+		} else {
+			return new ExpGolombDecoder(header);
+		}
+	}
+	
+}
@@ -0,0 +1,47 @@
+package br.jpiccoli.video;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Entropy coder of the quantized coefficients of a chunk (a slab of cubeDepth frames).
+ *
+ * The coefficients are received cube after cube, each cube in diagonal scan order (see {@link SlabEncoder}),
+ * and coded into the chunk data stored by the container. Every chunk must be coded independently, so it can
+ * be decoded without the preceding ones. The implementation is selected by {@link ContainerHeader#entropyCoding}
+ * and decoded by the matching {@link EntropyDecoder}.
+ *
+ * Instances own their buffers and are reused for multiple chunks, so they must not be shared among threads.
+ *
+ * @author Juliano Piccoli
+ */
+interface EntropyEncoder extends Closeable {
+
+	/**
+	 * Codes the quantized coefficients of a slab.
+	 * @param coefficients Quantized coefficients, cube after cube.
+	 * @return The chunk data.
+	 * @throws IOException If the coefficients can't be coded.
+	 */
+	byte[] encode(short[] coefficients) throws IOException;
+	
+	/**
+	 * Releases the resources used by the coder.
+	 */
+	@Override
+	void close();
+	
+	/**
+	 * Creates the entropy encoder selected by the header.
+	 * @param header Video header.
+	 * @return The entropy encoder.
+	 */
+	static EntropyEncoder create(final ContainerHeader header) {
+		if (header.entropyCoding == ContainerHeader.ARITHMETIC) {
+			return new ArithmeticEncoder(header);
+		} else {
+			return new ExpGolombEncoder(header);
+		}
+	}
+	
+}
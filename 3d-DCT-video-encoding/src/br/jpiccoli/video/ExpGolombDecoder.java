@@ -0,0 +1,78 @@
+package br.jpiccoli.video;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decoder of the chunks coded by {@link ExpGolombEncoder}: the chunk is inflated while
+ * the Exp-Golomb codes are read.
+ *
+ * @author Juliano Piccoli
+ */
+class ExpGolombDecoder implements EntropyDecoder {
+
+	private final boolean runLength;
+	private final int bufferSize;
+	private final ExpGolombReader reader;
+	private final Inflater inflater;
+	
+	ExpGolombDecoder(final ContainerHeader header) {
+		this.runLength = header.entropyCoding == ContainerHeader.RUN_LENGTH;
+		this.bufferSize = header.getFrameSize();
+		this.reader = new ExpGolombReader();
+		this.inflater = new Inflater();
+	}
+	
+	@Override
+	public void setInput(final byte[] chunkData) throws IOException {
+		// The inflater stream holds no resources besides the inflater, which is reused,
+		// so it doesn't need to be closed.
+		inflater.reset();
+		reader.setInput(new InflaterInputStream(new ByteArrayInputStream(chunkData), inflater, bufferSize), bufferSize);
+	}
+	
+	@Override
+	public int readCube(final int[] coefficients) throws IOException {
+		if (runLength) {
+			return readRunLength(coefficients);
+		}
+		reader.readValues(coefficients, coefficients.length);
+		int length = coefficients.length;
+		while (length > 0 && coefficients[length - 1] == 0) {
+			length--;
+		}
+		return length;
+	}
+	
+	/**
+	 * Reads the (zero run, level) pairs of a cube (see {@link ExpGolombEncoder}). The runs
+	 * of zeroes are filled directly, without reading any code.
+	 * @return Length of the coded part of the cube.
+	 */
+	private int readRunLength(final int[] coefficients) throws IOException {
+		int index = 0;
+		int run = reader.readUnsigned();
+		while (run != ExpGolombEncoder.END_OF_BLOCK) {
+			final int end = index + run - 1;
+			if (end >= coefficients.length) {
+				throw new IOException("Invalid zero run");
+			}
+			Arrays.fill(coefficients, index, end, 0);
+			final int level = reader.readUnsigned();
+			coefficients[end] = (level & 1) == 0 ? (level >>> 1) + 1 : -((level >>> 1) + 1);
+			index = end + 1;
+			run = reader.readUnsigned();
+		}
+		Arrays.fill(coefficients, index, coefficients.length, 0);
+		return index;
+	}
+	
+	@Override
+	public void close() {
+		inflater.end();
+	}
+	
+}
@@ -0,0 +1,125 @@
+package br.jpiccoli.video;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Exp-Golomb entropy coder followed by the deflate compression.
+ *
+ * Depending on {@link ContainerHeader#entropyCoding}, every coefficient is coded, or the diagonal
+ * scan of each cube is coded as (zero run, level) pairs: the length of the run of zeroes preceding each non
+ * zero coefficient and the coefficient itself, followed by an end of block marker after the last non zero
+ * coefficient of the cube, as in JPEG.
+ *
+ * @author Juliano Piccoli
+ */
+class ExpGolombEncoder implements EntropyEncoder {
+
+	/**
+	 * Run length code marking the end of the non zero coefficients of a cube.
+	 */
+	static final int END_OF_BLOCK = 0;
+	
+	private final boolean runLength;
+	private final int cubeSize;
+	private final ExpGolombWriter writer;
+	private final byte[] outputBuffer;
+	private final ByteArrayOutputStream chunkBuffer;
+	private final Deflater deflater;
+	
+	ExpGolombEncoder(final ContainerHeader header) {
+		this.runLength = header.entropyCoding == ContainerHeader.RUN_LENGTH;
+		this.cubeSize = header.cubeWidth * header.cubeHeight * header.cubeDepth;
+		// The Exp-Golomb buffer starts with the size of one frame and grows, if needed,
+		// up to the size required by the largest chunk.
+		this.writer = new ExpGolombWriter();
+		this.writer.setOutput(new byte[header.getFrameSize()]);
+		this.outputBuffer = new byte[header.getFrameSize()];
+		this.chunkBuffer = new ByteArrayOutputStream();
+		this.deflater = new Deflater();
+	}
+	
+	/**
+	 * @throws IOException Never thrown, since the Exp-Golomb data is written to a vector.
+	 */
+	@Override
+	public byte[] encode(final short[] coefficients) throws IOException {
+		
+		// Applying Exp-Golomb coding to the quantized data.
+		writer.reset();
+		if (runLength) {
+			writeRunLength(coefficients);
+		} else {
+			writeValues(coefficients);
+		}
+		final int expGolombLength = writer.finish();
+		
+		// Deflating the Exp-Golomb coded data. Each chunk is deflated independently,
+		// so it can be decoded without the preceding ones.
+		deflater.reset();
+		deflater.setInput(writer.getOutput(), 0, expGolombLength);
+		deflater.finish();
+		chunkBuffer.reset();
+		while (!deflater.finished()) {
+			int deflatedLength = deflater.deflate(outputBuffer);
+			chunkBuffer.write(outputBuffer, 0, deflatedLength);
+		}
+		return chunkBuffer.toByteArray();
+		
+	}
+	
+	/**
+	 * Codes every coefficient. Most of the high frequency coefficients are
+	 * zero, so the runs of zeroes are written at once.
+	 */
+	private void writeValues(final short[] coefficients) {
+		int index = 0;
+		while (index < coefficients.length) {
+			if (coefficients[index] == 0) {
+				int end = index + 1;
+				while (end < coefficients.length && coefficients[end] == 0) {
+					end++;
+				}
+				writer.writeZeroes(end - index);
+				index = end;
+			} else {
+				writer.writeValue(coefficients[index++]);
+			}
+		}
+	}
+	
+	/**
+	 * Codes the (zero run, level) pairs of each cube. The run is written as "run + 1" with the unsigned
+	 * code, so the value zero is the end of block marker, and the level, which is never zero, is written
+	 * as "2 * (|level| - 1) + sign" with the unsigned code. The zeroes following the last non zero
+	 * coefficient of the cube are not coded at all.
+	 */
+	private void writeRunLength(final short[] coefficients) {
+		for (int cubeOffset = 0; cubeOffset < coefficients.length; cubeOffset += cubeSize) {
+			final int cubeEnd = cubeOffset + cubeSize;
+			int run = 0;
+			for (int index = cubeOffset; index < cubeEnd; index++) {
+				final int level = coefficients[index];
+				if (level == 0) {
+					run++;
+				} else {
+					writer.writeUnsigned(run + 1);
+					if (level > 0) {
+						writer.writeUnsigned(2 * (level - 1));
+					} else {
+						writer.writeUnsigned(2 * (-level - 1) + 1);
+					}
+					run = 0;
+				}
+			}
+			writer.writeUnsigned(END_OF_BLOCK);
+		}
+	}
+	
+	@Override
+	public void close() {
+		deflater.end();
+	}
+	
+}
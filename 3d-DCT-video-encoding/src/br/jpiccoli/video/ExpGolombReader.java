@@ -1,65 +1,257 @@
 package br.jpiccoli.video;
 
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Signed Exp-Golomb decoder.
+ *
+ * The input bits are loaded into a 64 bits register, so the length of each code is obtained from the
+ * number of leading zeros of the register and the code itself with a single shift. Short codes, which
+ * are the vast majority of the quantized coefficients, are decoded several at a time through a lookup
+ * table indexed by the next 8 bits of the input (see {@link #readValues(int[], int)}).
+ */
 public class ExpGolombReader {
 
+	/**
+	 * Number of input bits used as the index of the lookup table.
+	 */
+	private static final int TABLE_BITS = 8;
+	
+	/**
+	 * For each combination of the next {@link #TABLE_BITS} bits: the number of complete codes
+	 * starting at the first bit, the number of bits used by them, and their values.
+	 */
+	private static final byte[] TABLE_COUNTS = new byte[1 << TABLE_BITS];
+	private static final byte[] TABLE_LENGTHS = new byte[1 << TABLE_BITS];
+	private static final byte[] TABLE_VALUES = new byte[TABLE_BITS << TABLE_BITS];
+	
+	static {
+		for (int entry = 0; entry < (1 << TABLE_BITS); entry++) {
+			int count = 0;
+			int length = 0;
+			while (true) {
+				final int remainingBits = TABLE_BITS - length;
+				final int remaining = entry & ((1 << remainingBits) - 1);
+				final int zeroes = Integer.numberOfLeadingZeros(remaining) - (Integer.SIZE - remainingBits);
+				final int codeLength = 2 * zeroes + 1;
+				if (remaining == 0 || codeLength > remainingBits) {
+					break;
+				}
+				final int code = remaining >>> (remainingBits - codeLength);
+				TABLE_VALUES[entry * TABLE_BITS + count] = (byte) toSigned(code);
+				count++;
+				length += codeLength;
+			}
+			TABLE_COUNTS[entry] = (byte) count;
+			TABLE_LENGTHS[entry] = (byte) length;
+		}
+	}
+
 	private byte[] input;
-	private int bitPosition;
-	private int bufferPosition;
+	private int inputLength;
+	private InputStream stream;
+	private int inputPosition;
+	private long bits;
+	private int bitsCount;
 	
 	public void setInput(byte[] input) {
 		this.input = input;
-		bitPosition = 8;
-		bufferPosition = 0;
+		this.inputLength = input.length;
+		this.stream = null;
+		reset();
+	}
+	
+	/**
+	 * Sets a stream as the source of the coded data. The data is read incrementally
+	 * into a buffer with the given size, so the coded data doesn't need to be fully
+	 * stored in memory.
+	 *
+	 * @param stream Stream containing the coded data.
+	 * @param bufferSize Size of the buffer used for reading the stream.
+	 * @throws IOException
+	 */
+	public void setInput(InputStream stream, int bufferSize) throws IOException {
+		this.input = new byte[bufferSize];
+		this.stream = stream;
+		this.inputLength = 0;
+		reset();
+		fill();
 	}
 	
+	/**
+	 * @return Index of the byte containing the next bit to be read. When the input is a stream,
+	 * the index is relative to the buffer.
+	 */
 	public int getBufferPosition() {
-		return bufferPosition;
+		return Math.max(0, inputPosition - (bitsCount + 7) / 8);
 	}
 	
-	public int readValue() {
-		int zeroesCount = 0;
-		byte byteValue = input[bufferPosition];
-		int bit = byteValue & (1 << (bitPosition - 1));
-		while(bit == 0) {
-			zeroesCount++;
-			bitPosition--;
-			if (bitPosition <= 0) {
-				bufferPosition++;
-				bitPosition = 8;
-				byteValue = input[bufferPosition];
-			}
-			bit = byteValue & (1 << (bitPosition - 1));
+	public int readValue() throws IOException {
+		return toSigned(readCode());
+	}
+	
+	/**
+	 * Reads a value coded with the unsigned Exp-Golomb code.
+	 * @return The value.
+	 * @throws IOException If the data can't be read from the stream.
+	 */
+	public int readUnsigned() throws IOException {
+		return readCode() - 1;
+	}
+	
+	private int readCode() throws IOException {
+		if (bitsCount < Integer.SIZE) {
+			refill();
 		}
-		int value = 0;
-		int bitCount = zeroesCount + 1;
-		while(bitCount > 0) {
-			if (bitCount > bitPosition) {
-				int mask = ExpGolomb.getMask(bitPosition);
-				value = value | ((byteValue & mask) << (bitCount - bitPosition));
-				bitCount -= bitPosition;
-				bitPosition = 8;
-				bufferPosition += 1;
-				byteValue = input[bufferPosition];
+		// The code is the value preceded by (number of bits of the value - 1) zeroes.
+		final int codeLength = 2 * Long.numberOfLeadingZeros(bits) + 1;
+		if (codeLength > bitsCount) {
+			return readLongCode();
+		}
+		final int code = (int) (bits >>> (Long.SIZE - codeLength));
+		bits <<= codeLength;
+		bitsCount -= codeLength;
+		return code;
+	}
+	
+	/**
+	 * Reads a sequence of values. Equivalent to calling {@link #readValue()} for each value, but the
+	 * short codes are decoded through the lookup table and the runs of zeroes are decoded at once.
+	 * @param dst Vector where the values are stored.
+	 * @param n Number of values.
+	 * @throws IOException If the data can't be read from the stream.
+	 */
+	public void readValues(final int[] dst, final int n) throws IOException {
+		// The register is kept in local variables while whole table entries are decoded.
+		long bits = this.bits;
+		int bitsCount = this.bitsCount;
+		int index = 0;
+		while (index < n) {
+			if (bitsCount < Integer.SIZE) {
+				this.bits = bits;
+				this.bitsCount = bitsCount;
+				refill();
+				bits = this.bits;
+				bitsCount = this.bitsCount;
+			}
+			final int entry = (int) (bits >>> (Long.SIZE - TABLE_BITS));
+			final int count = TABLE_COUNTS[entry];
+			if (count == TABLE_BITS) {
+				// Run of zeroes (each one coded as a single "1" bit), possibly longer than the table index.
+				final int run = Math.min(Math.min(Long.numberOfLeadingZeros(~bits), bitsCount), n - index);
+				for (final int end = index + run; index < end; index++) {
+					dst[index] = 0;
+				}
+				bits = run == Long.SIZE ? 0 : bits << run;
+				bitsCount -= run;
+			} else if (count > 0 && count <= n - index) {
+				for (int value = 0, tableIndex = entry * TABLE_BITS; value < count; value++, tableIndex++) {
+					dst[index++] = TABLE_VALUES[tableIndex];
+				}
+				final int length = TABLE_LENGTHS[entry];
+				bits <<= length;
+				bitsCount -= length;
 			} else {
-				int mask = ExpGolomb.getMask(bitCount);
-				mask = mask << (bitPosition - bitCount);
-				value = value | ((byteValue & mask) >> (bitPosition - bitCount));
-				bitPosition -= bitCount;
-				bitCount = 0;
-				if (bitPosition <= 0) {
-					bitPosition = 8;
-					bufferPosition += 1;
-					byteValue = input[bufferPosition];
+				// Code longer than the table index: decoded from the register, as in readCode().
+				final int codeLength = 2 * Long.numberOfLeadingZeros(bits) + 1;
+				if (codeLength <= bitsCount) {
+					dst[index++] = toSigned((int) (bits >>> (Long.SIZE - codeLength)));
+					bits <<= codeLength;
+					bitsCount -= codeLength;
+				} else {
+					this.bits = bits;
+					this.bitsCount = bitsCount;
+					dst[index++] = toSigned(readLongCode());
+					bits = this.bits;
+					bitsCount = this.bitsCount;
 				}
 			}
 		}
-		value -= 1;
-		if (value % 2 != 0) {
-			value = (value + 1) / 2;
+		this.bits = bits;
+		this.bitsCount = bitsCount;
+	}
+	
+	/**
+	 * Reads a code which doesn't fit in the bits currently available at the register.
+	 */
+	private int readLongCode() throws IOException {
+		int zeroes = 0;
+		while (true) {
+			final int leadingZeroes = Long.numberOfLeadingZeros(bits);
+			if (leadingZeroes < bitsCount) {
+				zeroes += leadingZeroes;
+				bits <<= leadingZeroes;
+				bitsCount -= leadingZeroes;
+				break;
+			}
+			zeroes += bitsCount;
+			bits = 0;
+			bitsCount = 0;
+			if (zeroes >= Integer.SIZE) {
+				throw new IOException("Invalid Exp-Golomb code");
+			}
+			refill();
+		}
+		if (bitsCount < Integer.SIZE) {
+			refill();
+		}
+		final int codeLength = zeroes + 1;
+		final int code = (int) (bits >>> (Long.SIZE - codeLength));
+		bits <<= codeLength;
+		bitsCount -= codeLength;
+		return code;
+	}
+	
+	private static int toSigned(final int code) {
+		// Even codes are the positive values and odd codes, the negative ones and zero.
+		if ((code & 1) == 0) {
+			return code >>> 1;
 		} else {
-			value = -value / 2;
+			return -(code >>> 1);
+		}
+	}
+	
+	private void reset() {
+		inputPosition = 0;
+		bits = 0;
+		bitsCount = 0;
+	}
+	
+	/**
+	 * Loads whole bytes into the register, reading more data from the stream (if any)
+	 * when the buffer is exhausted. After the end of the data, the register is filled
+	 * with zeroes (the coded data is always padded up to a full byte).
+	 */
+	private void refill() throws IOException {
+		while (bitsCount <= Long.SIZE - Byte.SIZE) {
+			if (inputPosition >= inputLength) {
+				if (stream == null || !fill()) {
+					bitsCount = Long.SIZE;
+					return;
+				}
+			}
+			bits |= (input[inputPosition++] & 0xFFL) << (Long.SIZE - Byte.SIZE - bitsCount);
+			bitsCount += Byte.SIZE;
+		}
+	}
+	
+	/**
+	 * Fills the buffer with data from the stream.
+	 * @return false if the end of the stream was reached.
+	 */
+	private boolean fill() throws IOException {
+		inputPosition = 0;
+		inputLength = 0;
+		int readResult = stream.read(input);
+		while (readResult > 0) {
+			inputLength += readResult;
+			if (inputLength == input.length) {
+				break;
+			}
+			readResult = stream.read(input, inputLength, input.length - inputLength);
 		}
-		return value;
+		return inputLength > 0;
 	}
 	
 }
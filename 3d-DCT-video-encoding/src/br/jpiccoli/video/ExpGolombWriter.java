@@ -1,19 +1,72 @@
 package br.jpiccoli.video;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Signed Exp-Golomb coder.
+ *
+ * The bits are accumulated in a 64 bits register and moved to the output buffer 32 bits at a time.
+ * The output is either a byte vector, which grows when it is full, or a stream, which receives the
+ * contents of the buffer every time it is full.
+ */
 public class ExpGolombWriter {
 
 	private byte[] output;
-	private int bitPosition;
-	private int bufferPosition;
+	private OutputStream stream;
+	private int outputPosition;
+	private long bits;
+	private int bitsCount;
 	
+	/**
+	 * Sets the vector where the coded data is stored. If the data doesn't fit, the vector
+	 * is replaced by a larger copy (see {@link #getOutput()}).
+	 * @param output Output vector.
+	 */
 	public void setOutput(byte[] output) {
 		this.output = output;
-		bitPosition = 8;
-		bufferPosition = 0;
+		this.stream = null;
+		reset();
+	}
+	
+	/**
+	 * Sets a stream as the destination of the coded data. The data is accumulated in a
+	 * buffer with the given size, which is written to the stream every time it is full.
+	 * The remaining data is written by {@link #finish()}.
+	 * @param stream Output stream.
+	 * @param bufferSize Size of the buffer.
+	 */
+	public void setOutput(OutputStream stream, int bufferSize) {
+		this.output = new byte[Math.max(bufferSize, Integer.BYTES)];
+		this.stream = stream;
+		reset();
 	}
 	
+	/**
+	 * @return The vector where the coded data is stored.
+	 */
+	public byte[] getOutput() {
+		return output;
+	}
+	
+	/**
+	 * @return Index of the byte that is currently being written. When the output is a stream,
+	 * the index is relative to the beginning of the data that wasn't written to the stream yet.
+	 */
 	public int getBufferPosition() {
-		return bufferPosition;
+		return outputPosition + bitsCount / 8;
+	}
+	
+	/**
+	 * Discards the data written so far and restarts writing at the beginning of the
+	 * output buffer. Used when the same buffer is reused for independent chunks.
+	 */
+	public void reset() {
+		outputPosition = 0;
+		bits = 0;
+		bitsCount = 0;
 	}
 	
 	public void writeValue(int value) {
@@ -22,29 +75,108 @@ public class ExpGolombWriter {
 		} else {
 			value = 2 * value - 1;
 		}
-		value += 1;
-		int bitsCount = ExpGolomb.getBitsCount(value);
-		int mask = ExpGolomb.getMask(bitsCount);
-		int zeroes = bitsCount - 1;
-		bitPosition -= zeroes;
-		while (bitPosition <= 0) {
-			bufferPosition += 1;
-			bitPosition = bitPosition + 8;
-		}
-		while(bitsCount > 0) {
-			if (bitPosition > bitsCount) {
-				output[bufferPosition] = (byte) (output[bufferPosition] | (value << (bitPosition - bitsCount)));
-				bitPosition -= bitsCount;
-				bitsCount = 0;
-			} else {
-				int reducedValue = value >> (bitsCount - bitPosition);
-				output[bufferPosition] = (byte) (output[bufferPosition] | reducedValue);
-				bitsCount -= bitPosition;
-				mask = mask >> bitPosition;
-				bufferPosition += 1;
-				bitPosition = 8;
-				value = value & mask;
+		writeCode(value + 1);
+	}
+	
+	/**
+	 * Writes a non-negative value using the unsigned Exp-Golomb code.
+	 * @param value Value to be written.
+	 */
+	public void writeUnsigned(int value) {
+		writeCode(value + 1);
+	}
+	
+	/**
+	 * Writes a sequence of zeroes. The code of a zero is a single bit ("1"),
+	 * so the sequence is written 32 values at a time.
+	 * @param count Number of zeroes.
+	 */
+	public void writeZeroes(int count) {
+		while (count >= Integer.SIZE) {
+			writeBits(-1, Integer.SIZE);
+			count -= Integer.SIZE;
+		}
+		if (count > 0) {
+			writeBits((1 << count) - 1, count);
+		}
+	}
+	
+	/**
+	 * Writes the remaining bits, padding the last byte with zeroes. As with the byte oriented
+	 * coder, the coded data always ends with the byte that follows the last written bit, even
+	 * if no bit was written to it. When the output is a stream, all the data is written to it
+	 * and the stream is flushed. The writer must be reset before being reused.
+	 * @return Length of the coded data stored in the output vector (zero for streams).
+	 * @throws IOException If the data can't be written to the stream.
+	 */
+	public int finish() throws IOException {
+		// The last byte is padded and, if the data ends at a byte boundary, an empty byte is added.
+		final int padding = 8 - (bitsCount % 8);
+		writeBits(0, padding);
+		while (bitsCount > 0) {
+			ensureCapacity(1);
+			bitsCount -= 8;
+			output[outputPosition++] = (byte) (bits >>> bitsCount);
+		}
+		if (stream != null) {
+			stream.write(output, 0, outputPosition);
+			stream.flush();
+			outputPosition = 0;
+		}
+		return outputPosition;
+	}
+	
+	private void writeCode(final int code) {
+		// The code is the value preceded by (number of bits of the value - 1) zeroes.
+		final int valueBitsCount = Integer.SIZE - Integer.numberOfLeadingZeros(code);
+		final int codeBitsCount = 2 * valueBitsCount - 1;
+		if (codeBitsCount <= Integer.SIZE) {
+			writeBits(code, codeBitsCount);
+		} else {
+			writeBits(0, valueBitsCount - 1);
+			writeBits(code, valueBitsCount);
+		}
+	}
+	
+	/**
+	 * Appends up to 32 bits to the register, moving 32 bits to the output when
+	 * the register holds more than that.
+	 * @param value Bits to be written, at the least significant positions.
+	 * @param count Number of bits.
+	 */
+	private void writeBits(final int value, final int count) {
+		// Only the lowest "bitsCount" bits of the register are meaningful.
+		bits = (bits << count) | (value & (-1L >>> (Long.SIZE - count)));
+		bitsCount += count;
+		if (bitsCount >= Integer.SIZE) {
+			bitsCount -= Integer.SIZE;
+			final int word = (int) (bits >>> bitsCount);
+			ensureCapacity(Integer.BYTES);
+			output[outputPosition] = (byte) (word >>> 24);
+			output[outputPosition + 1] = (byte) (word >>> 16);
+			output[outputPosition + 2] = (byte) (word >>> 8);
+			output[outputPosition + 3] = (byte) word;
+			outputPosition += Integer.BYTES;
+		}
+	}
+	
+	/**
+	 * Makes room for the given number of bytes in the output vector, either writing its
+	 * contents to the stream or replacing it with a larger copy.
+	 */
+	private void ensureCapacity(final int length) {
+		if (outputPosition + length <= output.length) {
+			return;
+		}
+		if (stream != null) {
+			try {
+				stream.write(output, 0, outputPosition);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
+			outputPosition = 0;
+		} else {
+			output = Arrays.copyOf(output, Math.max(output.length * 2, outputPosition + length));
 		}
 	}
 	
@@ -0,0 +1,70 @@
+package br.jpiccoli.video;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Computes the peak signal-to-noise ratio between two raw videos (one byte per pixel).
+ *
+ * This is used to compare the quality of the decoded videos produced by different transform
+ * implementations, for example the single and double precision ones: encode and decode the same
+ * video with each implementation and compare both outputs against the original video.
+ *
+ * @author Juliano Piccoli
+ */
+public class PSNR {
+
+	public static void main(String[] args) throws IOException {
+		
+		if (args.length < 4) {
+			System.out.println("Usage: java PSNR <reference file> <test file> <frame width> <frame height>");
+			System.out.println("The frames are compared until the end of the shortest file");
+			System.exit(-1);
+		}
+		
+		int frameSize = Integer.parseInt(args[2]) * Integer.parseInt(args[3]);
+		byte[] referenceFrame = new byte[frameSize];
+		byte[] testFrame = new byte[frameSize];
+		
+		int frames = 0;
+		double totalSquaredError = 0;
+		double minimumPSNR = Double.POSITIVE_INFINITY;
+		try (DataInputStream reference = new DataInputStream(new FileInputStream(new File(args[0])));
+				DataInputStream test = new DataInputStream(new FileInputStream(new File(args[1])))) {
+			
+			while (true) {
+				try {
+					reference.readFully(referenceFrame);
+					test.readFully(testFrame);
+				} catch (EOFException e) {
+					break;
+				}
+				double squaredError = 0;
+				for (int index = 0; index < frameSize; index++) {
+					int difference = (referenceFrame[index] & 0xFF) - (testFrame[index] & 0xFF);
+					squaredError += difference * difference;
+				}
+				minimumPSNR = Math.min(minimumPSNR, psnr(squaredError / frameSize));
+				totalSquaredError += squaredError;
+				frames++;
+			}
+			
+		}
+		
+		if (frames == 0) {
+			System.out.println("No complete frames to compare");
+			System.exit(-1);
+		}
+		
+		System.out.println("Frames compared: " + frames);
+		System.out.println(String.format("PSNR: %.3f dB (lowest frame: %.3f dB)", psnr(totalSquaredError / ((double) frames * frameSize)), minimumPSNR));
+		
+	}
+	
+	private static double psnr(final double meanSquaredError) {
+		return 10 * Math.log10(255.0d * 255.0d / meanSquaredError);
+	}
+	
+}
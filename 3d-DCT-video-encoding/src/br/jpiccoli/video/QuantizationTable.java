@@ -0,0 +1,146 @@
+package br.jpiccoli.video;
+
+/**
+ * Quantization steps of the coefficients of a cube.
+ *
+ * Each coefficient is divided by its step and rounded; the step grows with the frequency of the coefficient,
+ * since the high frequencies are less visible. The steps are stored in the container header, so the decoder
+ * doesn't depend on how they were chosen. Along with the steps, the table holds their reciprocals, so the
+ * quantization is a single multiplication per coefficient.
+ *
+ * The steps are stored by cube index (x + y * cubeWidth + z * cubeWidth * cubeHeight, see {@link ScanTable}).
+ *
+ * @author Juliano Piccoli
+ */
+public final class QuantizationTable {
+
+	/**
+	 * Quality matching the default quantizer (5).
+	 */
+	public static final int DEFAULT_QUALITY = 50;
+	
+	private static final int DEFAULT_QUANTIZER = 5;
+	
+	/**
+	 * Quantizer scale that keeps the steps unchanged. Scales are fixed point values with 8 fractional bits
+	 * (see {@link #scaled(int)}).
+	 */
+	public static final int UNIT_SCALE = 1 << 8;
+	
+	private final int[] steps;
+	private final double[] reciprocals;
+	private final float[] floatReciprocals;
+	
+	/**
+	 * Constructor.
+	 * @param steps Quantization step of each coefficient, by cube index. Every step must be positive.
+	 */
+	public QuantizationTable(final int[] steps) {
+		this.steps = steps.clone();
+		this.reciprocals = new double[steps.length];
+		this.floatReciprocals = new float[steps.length];
+		for (int index = 0; index < steps.length; index++) {
+			if (steps[index] < 1) {
+				throw new IllegalArgumentException("The quantization steps must be positive");
+			}
+			reciprocals[index] = 1.0d / steps[index];
+			floatReciprocals[index] = 1.0f / steps[index];
+		}
+	}
+	
+	/**
+	 * Creates the table used by the original encoder: the step of each coefficient is the quantizer
+	 * times the sum of its coordinates in the cube (and at least 1).
+	 * @param quantizer Quantizer.
+	 * @param cubeWidth Width of each cube.
+	 * @param cubeHeight Height of each cube.
+	 * @param cubeDepth Depth of each cube.
+	 * @return The table.
+	 */
+	public static QuantizationTable linear(final double quantizer, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		final int[] steps = new int[cubeWidth * cubeHeight * cubeDepth];
+		for (int k = 0, index = 0; k < cubeDepth; k++) {
+			for (int i = 0; i < cubeHeight; i++) {
+				for (int j = 0; j < cubeWidth; j++, index++) {
+					steps[index] = (int) Math.max(1, Math.round(quantizer * (i + j + k)));
+				}
+			}
+		}
+		return new QuantizationTable(steps);
+	}
+	
+	/**
+	 * Creates the table of a quality level, as in JPEG: quality 50 is the default quantizer, and each
+	 * step is scaled by 50 / quality below it, and by (100 - quality) / 50 above it. Lower qualities
+	 * result in smaller files and in more zero coefficients, which are faster to code and decode.
+	 * @param quality Quality, from 1 (smallest files) to 100 (all the steps equal to 1).
+	 * @param cubeWidth Width of each cube.
+	 * @param cubeHeight Height of each cube.
+	 * @param cubeDepth Depth of each cube.
+	 * @return The table.
+	 */
+	public static QuantizationTable forQuality(final int quality, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		return linear(getQuantizer(quality), cubeWidth, cubeHeight, cubeDepth);
+	}
+	
+	/**
+	 * @return The quantizer of the linear table of the given quality (see {@link #forQuality(int, int, int, int)}).
+	 */
+	public static double getQuantizer(final int quality) {
+		if (quality < 1 || quality > 100) {
+			throw new IllegalArgumentException("The quality must be between 1 and 100");
+		}
+		final double scale = quality < 50 ? 50.0d / quality : (100 - quality) / 50.0d;
+		return DEFAULT_QUANTIZER * scale;
+	}
+	
+	/**
+	 * Creates a table whose steps are the steps of this table multiplied by a scale. Used by the rate control,
+	 * which selects a scale for each chunk of the video (see {@link RateController}).
+	 * @param scale Scale, in units of 1 / {@link #UNIT_SCALE}. Must be positive.
+	 * @return The scaled table, or this table when the scale is {@link #UNIT_SCALE}.
+	 */
+	public QuantizationTable scaled(final int scale) {
+		if (scale == UNIT_SCALE) {
+			return this;
+		}
+		if (scale < 1) {
+			throw new IllegalArgumentException("The quantizer scale must be positive");
+		}
+		final int[] scaledSteps = new int[steps.length];
+		for (int index = 0; index < steps.length; index++) {
+			// Rounded to the nearest integer, in integer arithmetic so the encoder and the decoder always agree.
+			scaledSteps[index] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, ((long) steps[index] * scale + UNIT_SCALE / 2) / UNIT_SCALE));
+		}
+		return new QuantizationTable(scaledSteps);
+	}
+	
+	/**
+	 * @return Number of coefficients of the cube.
+	 */
+	public int size() {
+		return steps.length;
+	}
+	
+	/**
+	 * @return Quantization step of the coefficient at the given cube index.
+	 */
+	public int getStep(final int index) {
+		return steps[index];
+	}
+	
+	/**
+	 * @return Reciprocal of the quantization step of the coefficient at the given cube index.
+	 */
+	public double getReciprocal(final int index) {
+		return reciprocals[index];
+	}
+	
+	/**
+	 * @return Single precision reciprocal of the quantization step of the coefficient at the given cube index.
+	 */
+	public float getFloatReciprocal(final int index) {
+		return floatReciprocals[index];
+	}
+	
+}
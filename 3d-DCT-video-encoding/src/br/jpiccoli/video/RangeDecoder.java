@@ -0,0 +1,90 @@
+package br.jpiccoli.video;
+
+/**
+ * Decoder of the data coded by {@link RangeEncoder}. The probability vectors must follow the
+ * same contexts and updates used by the encoder, which is what the adaptive coding relies on.
+ *
+ * @author Juliano Piccoli
+ */
+class RangeDecoder {
+
+	private static final int TOP_MASK = 0xFF000000;
+	
+	private byte[] input;
+	private int inputPosition;
+	private int range;
+	private int code;
+	
+	/**
+	 * Starts decoding the given data.
+	 * @param input The coded data.
+	 */
+	void setInput(final byte[] input) {
+		this.input = input;
+		this.inputPosition = 0;
+		this.range = -1;
+		this.code = 0;
+		for (int index = 0; index < 5; index++) {
+			code = (code << 8) | nextByte();
+		}
+	}
+	
+	/**
+	 * Decodes a bit coded with an adaptive probability.
+	 * @param probabilities Probability vector.
+	 * @param context Index of the probability of the bit being zero.
+	 * @return The bit (zero or one).
+	 */
+	int decodeBit(final short[] probabilities, final int context) {
+		final int probability = probabilities[context];
+		final int bound = (range >>> RangeEncoder.PROBABILITY_BITS) * probability;
+		final int bit;
+		// Unsigned comparison of code and bound.
+		if ((code ^ 0x80000000) < (bound ^ 0x80000000)) {
+			range = bound;
+			probabilities[context] = (short) (probability + ((RangeEncoder.PROBABILITY_ONE - probability) >>> RangeEncoder.ADAPTATION_SHIFT));
+			bit = 0;
+		} else {
+			code -= bound;
+			range -= bound;
+			probabilities[context] = (short) (probability - (probability >>> RangeEncoder.ADAPTATION_SHIFT));
+			bit = 1;
+		}
+		while ((range & TOP_MASK) == 0) {
+			code = (code << 8) | nextByte();
+			range <<= 8;
+		}
+		return bit;
+	}
+	
+	/**
+	 * Decodes bits coded with probability 1/2, most significant first.
+	 * @param count Number of bits.
+	 * @return The value.
+	 */
+	int decodeDirectBits(final int count) {
+		int value = 0;
+		for (int bit = 0; bit < count; bit++) {
+			range >>>= 1;
+			final int borrow = (code - range) >>> 31;
+			code -= range & (borrow - 1);
+			value = (value << 1) | (1 - borrow);
+			while ((range & TOP_MASK) == 0) {
+				code = (code << 8) | nextByte();
+				range <<= 8;
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * @return The next byte of the input, or zero after its end.
+	 */
+	private int nextByte() {
+		if (inputPosition < input.length) {
+			return input[inputPosition++] & 0xFF;
+		}
+		return 0;
+	}
+	
+}
@@ -0,0 +1,141 @@
+package br.jpiccoli.video;
+
+import java.util.Arrays;
+
+/**
+ * Adaptive binary range coder.
+ *
+ * Each bit is coded with the probability of being zero stored in a context (an element of a probability
+ * vector), which is updated after every bit, so the frequent outcomes of each context cost a small fraction
+ * of a bit. Bits with no useful statistics, like signs, are coded directly with probability 1/2. This is the
+ * carry-less coder used by LZMA: probabilities have {@link #PROBABILITY_BITS} bits and the coded data is
+ * written one byte at a time to a vector that grows when it is full.
+ *
+ * @author Juliano Piccoli
+ */
+class RangeEncoder {
+
+	static final int PROBABILITY_BITS = 11;
+	static final int PROBABILITY_ONE = 1 << PROBABILITY_BITS;
+	
+	/**
+	 * Initial value of the probabilities: zeroes and ones are equally likely.
+	 */
+	static final short INITIAL_PROBABILITY = PROBABILITY_ONE / 2;
+	
+	/**
+	 * Adaptation speed of the probabilities: each coded bit moves the probability
+	 * of its context by 1/32 of the distance to the outcome.
+	 */
+	static final int ADAPTATION_SHIFT = 5;
+	
+	private static final int TOP_MASK = 0xFF000000;
+	
+	private byte[] output;
+	private int outputPosition;
+	private long low;
+	private int range;
+	private int cache;
+	private long cacheSize;
+	
+	/**
+	 * Constructor.
+	 * @param initialCapacity Initial size of the output vector.
+	 */
+	RangeEncoder(final int initialCapacity) {
+		this.output = new byte[Math.max(initialCapacity, 16)];
+		reset();
+	}
+	
+	/**
+	 * Discards the data coded so far and restarts writing at the beginning of the output vector.
+	 */
+	void reset() {
+		outputPosition = 0;
+		low = 0;
+		range = -1;
+		cache = 0;
+		cacheSize = 1;
+	}
+	
+	/**
+	 * @return The vector where the coded data is stored.
+	 */
+	byte[] getOutput() {
+		return output;
+	}
+	
+	/**
+	 * Codes a bit with an adaptive probability.
+	 * @param probabilities Probability vector.
+	 * @param context Index of the probability of the bit being zero.
+	 * @param bit The bit (zero or one).
+	 */
+	void encodeBit(final short[] probabilities, final int context, final int bit) {
+		final int probability = probabilities[context];
+		final int bound = (range >>> PROBABILITY_BITS) * probability;
+		if (bit == 0) {
+			range = bound;
+			probabilities[context] = (short) (probability + ((PROBABILITY_ONE - probability) >>> ADAPTATION_SHIFT));
+		} else {
+			low += bound & 0xFFFFFFFFL;
+			range -= bound;
+			probabilities[context] = (short) (probability - (probability >>> ADAPTATION_SHIFT));
+		}
+		while ((range & TOP_MASK) == 0) {
+			range <<= 8;
+			shiftLow();
+		}
+	}
+	
+	/**
+	 * Codes the lowest bits of a value with probability 1/2, most significant first.
+	 * @param value The value.
+	 * @param count Number of bits.
+	 */
+	void encodeDirectBits(final int value, final int count) {
+		for (int bit = count - 1; bit >= 0; bit--) {
+			range >>>= 1;
+			if (((value >>> bit) & 1) != 0) {
+				low += range & 0xFFFFFFFFL;
+			}
+			while ((range & TOP_MASK) == 0) {
+				range <<= 8;
+				shiftLow();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the remaining bytes of the coded data. The coder must be reset before being reused.
+	 * @return Length of the coded data stored in the output vector.
+	 */
+	int finish() {
+		for (int index = 0; index < 5; index++) {
+			shiftLow();
+		}
+		return outputPosition;
+	}
+	
+	/**
+	 * Moves the top byte of "low" to the output. Bytes equal to 0xFF are held back
+	 * until it is known whether a carry will propagate through them.
+	 */
+	private void shiftLow() {
+		if (low < 0xFF000000L || low > 0xFFFFFFFFL) {
+			final int carry = (int) (low >>> 32);
+			int value = cache;
+			do {
+				if (outputPosition == output.length) {
+					output = Arrays.copyOf(output, output.length * 2);
+				}
+				output[outputPosition++] = (byte) (value + carry);
+				value = 0xFF;
+			} while (--cacheSize != 0);
+			cache = (int) (low >>> 24) & 0xFF;
+		}
+		cacheSize++;
+		low = (low & 0x00FFFFFFL) << 8;
+	}
+	
+}
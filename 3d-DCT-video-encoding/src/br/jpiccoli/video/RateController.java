@@ -0,0 +1,126 @@
+package br.jpiccoli.video;
+
+/**
+ * Rate control of the encoder: selects the quantizer scale of each chunk (see {@link QuantizationTable#scaled(int)})
+ * so the size of the coded video approaches a target bit rate.
+ *
+ * The size of a coded chunk is modeled as c * scale ^ -exponent. The size of each coded chunk is measured and
+ * the scale of the next chunk is selected so that, under the model, it is coded with the target number of bytes.
+ * The difference between the bytes spent so far and the bytes allowed by the target rate is spread over the next
+ * chunks, so the average rate converges to the target even when the model is inaccurate.
+ *
+ * When a chunk is coded twice (see {@link #addFirstPass(int, int)}), the two measurements also update the exponent
+ * of the model.
+ *
+ * @author Juliano Piccoli
+ */
+class RateController {
+
+	private static final int MIN_SCALE = QuantizationTable.UNIT_SCALE / 16;
+	private static final int MAX_SCALE = QuantizationTable.UNIT_SCALE * 64;
+	
+	/**
+	 * Largest factor between the scales of consecutive chunks.
+	 */
+	private static final double MAX_STEP = 2.0d;
+	
+	/**
+	 * Number of chunks over which the accumulated rate error is corrected.
+	 */
+	private static final int BUFFER_CHUNKS = 4;
+	
+	/**
+	 * Relative size error accepted by the first pass of a chunk.
+	 */
+	private static final double TOLERANCE = 0.05d;
+	
+	private static final double MIN_EXPONENT = 0.25d;
+	private static final double MAX_EXPONENT = 4.0d;
+	
+	private final double chunkBytes;
+	private double exponent = 1.0d;
+	private int scale = QuantizationTable.UNIT_SCALE;
+	private long chunks;
+	private long spentBytes;
+	private int firstPassScale;
+	private int firstPassBytes;
+	
+	/**
+	 * Constructor.
+	 * @param bitsPerSecond Target bit rate.
+	 * @param framesPerSecond Frame rate of the video.
+	 * @param cubeDepth Number of frames of each chunk.
+	 */
+	RateController(final long bitsPerSecond, final double framesPerSecond, final int cubeDepth) {
+		if (bitsPerSecond < 1 || framesPerSecond <= 0) {
+			throw new IllegalArgumentException("The bit rate and the frame rate must be positive");
+		}
+		this.chunkBytes = bitsPerSecond * cubeDepth / framesPerSecond / Byte.SIZE;
+	}
+	
+	/**
+	 * @return Quantizer scale of the next chunk.
+	 */
+	int getScale() {
+		return scale;
+	}
+	
+	/**
+	 * @return Target size of the next chunk, in bytes.
+	 */
+	double getTargetBytes() {
+		final double debt = chunks * chunkBytes - spentBytes;
+		return Math.max(chunkBytes / 2, chunkBytes + debt / BUFFER_CHUNKS);
+	}
+	
+	/**
+	 * @param bytes Size of a coded chunk.
+	 * @return Whether the size is close enough to the target size of the next chunk.
+	 */
+	boolean isOnTarget(final int bytes) {
+		return Math.abs(bytes - getTargetBytes()) <= getTargetBytes() * TOLERANCE;
+	}
+	
+	/**
+	 * Estimates the scale that codes the next chunk with its target size.
+	 * @param codedScale Scale used for coding the chunk.
+	 * @param bytes Size of the chunk coded with that scale.
+	 * @return The estimated scale.
+	 */
+	int estimateScale(final int codedScale, final int bytes) {
+		final double factor = Math.pow(Math.max(bytes, 1) / getTargetBytes(), 1.0d / exponent);
+		final double estimate = codedScale * Math.max(1.0d / MAX_STEP, Math.min(MAX_STEP, factor));
+		return (int) Math.max(MIN_SCALE, Math.min(MAX_SCALE, Math.round(estimate)));
+	}
+	
+	/**
+	 * Registers the size of the first pass of the next chunk, which is then coded again with the
+	 * scale given by {@link #estimateScale(int, int)}.
+	 * @param codedScale Scale used by the first pass.
+	 * @param bytes Size of the chunk coded by the first pass.
+	 */
+	void addFirstPass(final int codedScale, final int bytes) {
+		firstPassScale = codedScale;
+		firstPassBytes = bytes;
+	}
+	
+	/**
+	 * Registers the size of a chunk written to the output and selects the scale of the next one.
+	 * @param codedScale Scale used for coding the chunk.
+	 * @param bytes Size of the chunk.
+	 */
+	void addChunk(final int codedScale, final int bytes) {
+		if (firstPassBytes > 0 && firstPassScale != codedScale && bytes > 0) {
+			// Both passes coded the same slab, so they measure the exponent of the model.
+			final double measured = Math.log((double) firstPassBytes / bytes) / Math.log((double) codedScale / firstPassScale);
+			if (measured > 0) {
+				exponent = (exponent + Math.max(MIN_EXPONENT, Math.min(MAX_EXPONENT, measured))) / 2;
+			}
+		}
+		firstPassBytes = 0;
+		chunks++;
+		spentBytes += bytes;
+		scale = estimateScale(codedScale, bytes);
+	}
+	
+}
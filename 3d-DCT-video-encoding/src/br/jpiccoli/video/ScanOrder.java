@@ -0,0 +1,111 @@
+package br.jpiccoli.video;
+
+/**
+ * Order in which the coefficients of each DCT cube are scanned.
+ *
+ * The coefficients are sorted by the weighted sum of their coordinates in the cube (x * xWeight +
+ * y * yWeight + z * zWeight), so the low frequencies come first and the zeroes of the high frequencies
+ * are grouped at the end of each cube. Coefficients with the same sum are sorted by y, z and x, so the
+ * {@link #DIAGONAL} order scans the diagonal slices of the cube (the coefficients with the same x + y + z)
+ * in the order of the original diagonal scan.
+ * Larger weights move the frequencies along the corresponding axis towards the end of the scan.
+ *
+ * @author Juliano Piccoli
+ */
+public final class ScanOrder {
+
+	/**
+	 * Diagonal slices of the cube: every axis has the same weight.
+	 */
+	public static final ScanOrder DIAGONAL = new ScanOrder(1, 1, 1);
+	
+	/**
+	 * Favors the spatial frequencies: the temporal frequencies (z axis) are scanned later.
+	 * Suited to videos with little motion, whose energy is concentrated in the first frame
+	 * of the transformed cubes.
+	 */
+	public static final ScanOrder SPATIAL = new ScanOrder(1, 1, 2);
+	
+	/**
+	 * Favors the temporal frequencies: the spatial frequencies (x and y axes) are scanned later.
+	 * Suited to smooth videos with a lot of motion.
+	 */
+	public static final ScanOrder TEMPORAL = new ScanOrder(2, 2, 1);
+	
+	private final int xWeight;
+	private final int yWeight;
+	private final int zWeight;
+	
+	/**
+	 * Constructor.
+	 * @param xWeight Weight of the horizontal frequencies.
+	 * @param yWeight Weight of the vertical frequencies.
+	 * @param zWeight Weight of the temporal frequencies.
+	 */
+	public ScanOrder(final int xWeight, final int yWeight, final int zWeight) {
+		// Positive weights guarantee that the preceding coefficient along each axis
+		// is scanned first, which the arithmetic coder contexts rely on.
+		if (xWeight < 1 || yWeight < 1 || zWeight < 1) {
+			throw new IllegalArgumentException("The scan weights must be positive");
+		}
+		this.xWeight = xWeight;
+		this.yWeight = yWeight;
+		this.zWeight = zWeight;
+	}
+	
+	/**
+	 * Returns the scan order with the given name: "diagonal", "spatial" or "temporal".
+	 * @param name Name of the scan order.
+	 * @return The scan order.
+	 */
+	public static ScanOrder forName(final String name) {
+		if (name.equalsIgnoreCase("spatial")) {
+			return SPATIAL;
+		} else if (name.equalsIgnoreCase("temporal")) {
+			return TEMPORAL;
+		} else if (name.equalsIgnoreCase("diagonal")) {
+			return DIAGONAL;
+		}
+		throw new IllegalArgumentException("Unknown scan order: " + name);
+	}
+	
+	public int getXWeight() {
+		return xWeight;
+	}
+	
+	public int getYWeight() {
+		return yWeight;
+	}
+	
+	public int getZWeight() {
+		return zWeight;
+	}
+	
+	/**
+	 * @return Position of the coefficient in the scan order. Coefficients with smaller keys are scanned first.
+	 */
+	long sortKey(final int x, final int y, final int z, final int width, final int height, final int depth) {
+		final long sum = (long) x * xWeight + (long) y * yWeight + (long) z * zWeight;
+		return ((sum * height + y) * depth + z) * width + x;
+	}
+	
+	@Override
+	public boolean equals(final Object object) {
+		if (!(object instanceof ScanOrder)) {
+			return false;
+		}
+		final ScanOrder other = (ScanOrder) object;
+		return xWeight == other.xWeight && yWeight == other.yWeight && zWeight == other.zWeight;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (xWeight * 31 + yWeight) * 31 + zWeight;
+	}
+	
+	@Override
+	public String toString() {
+		return xWeight + ":" + yWeight + ":" + zWeight;
+	}
+	
+}
@@ -0,0 +1,72 @@
+package br.jpiccoli.video;
+
+/**
+ * Scan order of the coefficients of a cube, as flat permutation vectors.
+ *
+ * The cube index of a coefficient is x + y * cubeWidth + z * cubeWidth * cubeHeight, the order in which
+ * the transforms store the cube; its scan index is its position in the {@link ScanOrder}. The tables are
+ * shared by every user of the same cube dimensions and scan order (see
+ * {@link CubeUtils#scanTable(int, int, int, ScanOrder)}), so they must not be modified.
+ *
+ * @author Juliano Piccoli
+ */
+public final class ScanTable {
+
+	private final int width;
+	private final int height;
+	private final int[] forward;
+	private final int[] inverse;
+	
+	ScanTable(final int width, final int height, final int[] forward) {
+		this.width = width;
+		this.height = height;
+		this.forward = forward;
+		this.inverse = new int[forward.length];
+		for (int index = 0; index < forward.length; index++) {
+			inverse[forward[index]] = index;
+		}
+	}
+	
+	/**
+	 * @return Number of coefficients of the cube.
+	 */
+	public int size() {
+		return forward.length;
+	}
+	
+	/**
+	 * @return Cube index of the coefficient at each scan index.
+	 */
+	public int[] getForward() {
+		return forward;
+	}
+	
+	/**
+	 * @return Scan index of the coefficient at each cube index.
+	 */
+	public int[] getInverse() {
+		return inverse;
+	}
+	
+	/**
+	 * @return Horizontal coordinate of the coefficient at the given scan index.
+	 */
+	public int getX(final int scanIndex) {
+		return forward[scanIndex] % width;
+	}
+	
+	/**
+	 * @return Vertical coordinate of the coefficient at the given scan index.
+	 */
+	public int getY(final int scanIndex) {
+		return (forward[scanIndex] / width) % height;
+	}
+	
+	/**
+	 * @return Temporal coordinate of the coefficient at the given scan index.
+	 */
+	public int getZ(final int scanIndex) {
+		return forward[scanIndex] / (width * height);
+	}
+	
+}
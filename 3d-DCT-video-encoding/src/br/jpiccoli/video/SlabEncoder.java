@@ -0,0 +1,371 @@
+package br.jpiccoli.video;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import br.jpiccoli.video.dct.DCT;
+import br.jpiccoli.video.dct.FastDCT;
+import br.jpiccoli.video.dct.FloatBlockTransform;
+import br.jpiccoli.video.dct.Transform;
+
+/**
+ * Block level encoding pipeline for a slab of cubeDepth frames.
+ *
+ * Each cube of the slab is processed at once: its pixels are copied to a small contiguous buffer,
+ * transformed, quantized and stored in diagonal scan order. The cube data stays in the processor cache
+ * during the whole process and no intermediate vector with the size of the slab is needed. Each task
+ * processes a row of cubes, and the buffers of each thread are reused by all its cubes.
+ *
+ * For the rate control, the slab can also be transformed without being quantized ({@link #transform(byte[], float[], Executor)}),
+ * so it can be quantized with different quantizer scales ({@link #quantize(float[], short[], int)}) without computing the DCT again.
+ *
+ * Before a cube is transformed, its pixels are compared with the co-located cube of the previous slab and with its own first
+ * pixel. Cubes that didn't change since the previous slab (as in most of a screen recording) keep the coefficients of the previous
+ * slab, and cubes whose pixels are all equal only have the DC coefficient, which is computed directly. Neither one is transformed.
+ *
+ * @author Juliano Piccoli
+ */
+class SlabEncoder {
+
+	/**
+	 * Classes of cubes found before the transform (see {@link #classifyBlock(byte[], byte[], int, int)}).
+	 */
+	private static final int CHANGED = 0;
+	private static final int UNCHANGED = 1;
+	private static final int CONSTANT = 2;
+	
+	private final ContainerHeader header;
+	private final String transformName;
+	private final int cubeSize;
+	private final int[] scanOrder;
+	private final double[] reciprocals;
+	private final float[] floatReciprocals;
+	private final ThreadLocal<BlockState> blockState;
+	private final double dcFactor;
+	private final LongAdder skippedCubes = new LongAdder();
+	
+	/**
+	 * Constructor.
+	 * @param header Video header.
+	 * @param transformName Name of the DCT implementation ("reference", "fast" or "float").
+	 */
+	SlabEncoder(final ContainerHeader header, final String transformName) {
+		this.header = header;
+		this.transformName = transformName;
+		final int cubeWidth = header.cubeWidth;
+		final int cubeFaceSize = cubeWidth * header.cubeHeight;
+		this.cubeSize = cubeFaceSize * header.cubeDepth;
+		
+		// The DCT Coefficients inside the cubes are listed in diagonal slices to maximize the lengths
+		// of the zeroes sequences. This increases the efficiency of the entropy coders.
+		this.scanOrder = header.getScanTable().getForward();
+		
+		// Quantization divides each sample of the DCT cube by its step in the quantization
+		// table. The reciprocals of the steps are listed in scan order, so the quantization
+		// and the scan take a single multiplication per coefficient.
+		final QuantizationTable quantizationTable = header.getQuantizationTable();
+		this.reciprocals = new double[cubeSize];
+		this.floatReciprocals = new float[cubeSize];
+		for (int index = 0; index < cubeSize; index++) {
+			reciprocals[index] = quantizationTable.getReciprocal(scanOrder[index]);
+			floatReciprocals[index] = quantizationTable.getFloatReciprocal(scanOrder[index]);
+		}
+		
+		this.blockState = ThreadLocal.withInitial(BlockState::new);
+		
+		// The DCT is orthonormal: the DC coefficient of a constant cube is its value times the square root of its size.
+		this.dcFactor = Math.sqrt(cubeSize);
+	}
+	
+	/**
+	 * @return Number of cubes encoded so far without being transformed, since they didn't change or were constant.
+	 */
+	long getSkippedCubes() {
+		return skippedCubes.sum();
+	}
+	
+	/**
+	 * Encodes a slab. This method blocks the calling thread until all the cubes are processed.
+	 *
+	 * @param pixels Pixels of the slab (one byte per pixel, frame after frame).
+	 * @param previousPixels Pixels of the previous slab, or null for the first one.
+	 * @param coefficients Output vector. The quantized coefficients of each cube are stored
+	 * in diagonal scan order, cube after cube.
+	 * @param previousCoefficients Quantized coefficients of the previous slab, or null for the first one. It may
+	 * be the output vector itself.
+	 * @param executor Executor that will be used to dispatch the block tasks.
+	 * @throws InterruptedException
+	 */
+	void encode(final byte[] pixels, final byte[] previousPixels, final short[] coefficients, final short[] previousCoefficients, final Executor executor) throws InterruptedException {
+		run(new Slab(pixels, previousPixels, coefficients, previousCoefficients, null), executor);
+	}
+	
+	/**
+	 * Transforms a slab without quantizing it. This method blocks the calling thread until all the cubes are processed.
+	 *
+	 * @param pixels Pixels of the slab (one byte per pixel, frame after frame).
+	 * @param previousPixels Pixels of the previous slab, or null for the first one.
+	 * @param transformed Output vector. The DCT coefficients of each cube are stored in diagonal scan
+	 * order, cube after cube. Unless the previous slab is null, it must hold the DCT coefficients of the
+	 * previous slab, which are kept for the cubes that didn't change.
+	 * @param executor Executor that will be used to dispatch the block tasks.
+	 * @throws InterruptedException
+	 */
+	void transform(final byte[] pixels, final byte[] previousPixels, final float[] transformed, final Executor executor) throws InterruptedException {
+		run(new Slab(pixels, previousPixels, null, null, transformed), executor);
+	}
+	
+	/**
+	 * Quantizes a slab transformed by {@link #transform(byte[], byte[], float[], Executor)}.
+	 * @param transformed DCT coefficients of the slab.
+	 * @param coefficients Output vector, where the quantized coefficients are stored in the same order.
+	 * @param quantizerScale Scale of the quantization steps (see {@link QuantizationTable#scaled(int)}).
+	 */
+	void quantize(final float[] transformed, final short[] coefficients, final int quantizerScale) {
+		final QuantizationTable quantizationTable = header.getQuantizationTable().scaled(quantizerScale);
+		final float[] scaledReciprocals = new float[cubeSize];
+		for (int index = 0; index < cubeSize; index++) {
+			scaledReciprocals[index] = quantizationTable.getFloatReciprocal(scanOrder[index]);
+		}
+		for (int cubeOffset = 0; cubeOffset < transformed.length; cubeOffset += cubeSize) {
+			for (int index = 0; index < cubeSize; index++) {
+				coefficients[cubeOffset + index] = (short) Math.round(transformed[cubeOffset + index] * scaledReciprocals[index]);
+			}
+		}
+	}
+	
+	/**
+	 * Encodes the cubes of a slab with one task per row of cubes. If any task fails, the exception of the
+	 * first failure is thrown once all the tasks are done, so the encoder stops instead of waiting forever.
+	 */
+	private void run(final Slab slab, final Executor executor) throws InterruptedException {
+		final int rowsCount = header.height / header.cubeHeight;
+		final int rowSize = (header.width / header.cubeWidth) * cubeSize;
+		final CountDownLatch countDownLatch = new CountDownLatch(rowsCount);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		for (int row = 0; row < rowsCount; row++) {
+			executor.execute(new RowWork(slab, row * header.cubeHeight, row * rowSize, countDownLatch, failure));
+		}
+		countDownLatch.await();
+		final Throwable error = failure.get();
+		if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error != null) {
+			throw (RuntimeException) error;
+		}
+	}
+	
+	/**
+	 * Compares the pixels of a cube with the co-located cube of the previous slab and with its first pixel.
+	 * @return {@link #UNCHANGED}, {@link #CONSTANT} or {@link #CHANGED}.
+	 */
+	private int classifyBlock(final byte[] pixels, final byte[] previousPixels, final int x, final int y) {
+		final int width = header.width;
+		final int frameSize = header.getFrameSize();
+		final byte first = pixels[y * width + x];
+		boolean unchanged = previousPixels != null;
+		boolean constant = true;
+		for (int k = 0, frameOffset = y * width + x; k < header.cubeDepth; k++, frameOffset += frameSize) {
+			for (int i = 0, lineOffset = frameOffset; i < header.cubeHeight; i++, lineOffset += width) {
+				for (int j = 0, pixelOffset = lineOffset; j < header.cubeWidth; j++, pixelOffset++) {
+					final byte pixel = pixels[pixelOffset];
+					unchanged = unchanged && pixel == previousPixels[pixelOffset];
+					constant &= pixel == first;
+				}
+				if (!unchanged && !constant) {
+					return CHANGED;
+				}
+			}
+		}
+		return unchanged ? UNCHANGED : constant ? CONSTANT : CHANGED;
+	}
+	
+	/**
+	 * Encodes a single cube. When the transformed vector is given, the DCT coefficients are
+	 * stored in it in scan order instead of being quantized.
+	 */
+	private void encodeBlock(final Slab slab, final int x, final int y, final int cubeOffset) {
+		
+		final byte[] pixels = slab.pixels;
+		final short[] coefficients = slab.coefficients;
+		final float[] transformed = slab.transformed;
+		
+		final int blockClass = classifyBlock(pixels, slab.previousPixels, x, y);
+		if (blockClass == UNCHANGED) {
+			// The transformed vector already holds the coefficients of the previous slab.
+			if (transformed == null && slab.previousCoefficients != coefficients) {
+				System.arraycopy(slab.previousCoefficients, cubeOffset, coefficients, cubeOffset, cubeSize);
+			}
+			skippedCubes.increment();
+			return;
+		} else if (blockClass == CONSTANT) {
+			// The DC coefficient is the first one of every scan order.
+			final double dc = (pixels[y * header.width + x] & 0xFF) * dcFactor;
+			if (transformed != null) {
+				transformed[cubeOffset] = (float) dc;
+				Arrays.fill(transformed, cubeOffset + 1, cubeOffset + cubeSize, 0);
+			} else {
+				coefficients[cubeOffset] = (short) Math.round(dc * reciprocals[0]);
+				Arrays.fill(coefficients, cubeOffset + 1, cubeOffset + cubeSize, (short) 0);
+			}
+			skippedCubes.increment();
+			return;
+		}
+		
+		final BlockState state = blockState.get();
+		final int width = header.width;
+		final int frameSize = header.getFrameSize();
+		
+		if (state.floatTransform != null) {
+			
+			// Gathering the cube pixels
+			final float[] block = state.floatBlock;
+			int blockIndex = 0;
+			for (int k = 0, frameOffset = y * width + x; k < header.cubeDepth; k++, frameOffset += frameSize) {
+				for (int i = 0, lineOffset = frameOffset; i < header.cubeHeight; i++, lineOffset += width) {
+					for (int j = 0, pixelOffset = lineOffset; j < header.cubeWidth; j++, pixelOffset++) {
+						block[blockIndex++] = pixels[pixelOffset] & 0xFF;
+					}
+				}
+			}
+			
+			state.floatTransform.forward(block, 0);
+			
+			if (transformed != null) {
+				for (int index = 0; index < cubeSize; index++) {
+					transformed[cubeOffset + index] = block[scanOrder[index]];
+				}
+				return;
+			}
+			
+			// Quantization and diagonal scan
+			for (int index = 0; index < cubeSize; index++) {
+				coefficients[cubeOffset + index] = (short) Math.round(block[scanOrder[index]] * floatReciprocals[index]);
+			}
+			
+		} else {
+			
+			// Gathering the cube pixels
+			final double[] block = state.input;
+			int blockIndex = 0;
+			for (int k = 0, frameOffset = y * width + x; k < header.cubeDepth; k++, frameOffset += frameSize) {
+				for (int i = 0, lineOffset = frameOffset; i < header.cubeHeight; i++, lineOffset += width) {
+					for (int j = 0, pixelOffset = lineOffset; j < header.cubeWidth; j++, pixelOffset++) {
+						block[blockIndex++] = pixels[pixelOffset] & 0xFF;
+					}
+				}
+			}
+			
+			state.transform.runSingleBlock();
+			
+			final double[] dctCoeff = state.output;
+			if (transformed != null) {
+				for (int index = 0; index < cubeSize; index++) {
+					transformed[cubeOffset + index] = (float) dctCoeff[scanOrder[index]];
+				}
+				return;
+			}
+			
+			// Quantization and diagonal scan
+			for (int index = 0; index < cubeSize; index++) {
+				coefficients[cubeOffset + index] = (short) Math.round(dctCoeff[scanOrder[index]] * reciprocals[index]);
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Buffers and transform instance owned by each worker thread. The transform input
+	 * and output vectors hold a single cube. The single precision transform works in
+	 * place over a float block.
+	 */
+	private final class BlockState {
+
+		private final double[] input;
+		private final double[] output;
+		private final Transform transform;
+		private final float[] floatBlock;
+		private final FloatBlockTransform floatTransform;
+		
+		private BlockState() {
+			if (transformName.equalsIgnoreCase("float")) {
+				input = null;
+				output = null;
+				transform = null;
+				floatBlock = new float[cubeSize];
+				floatTransform = FloatBlockTransform.create(header.cubeWidth, header.cubeHeight, header.cubeDepth);
+			} else {
+				input = new double[cubeSize];
+				output = new double[cubeSize];
+				if (transformName.equalsIgnoreCase("reference")) {
+					transform = new DCT(input, output, header.cubeWidth, header.cubeHeight, header.cubeWidth, header.cubeHeight, header.cubeDepth);
+				} else {
+					transform = new FastDCT(input, output, header.cubeWidth, header.cubeHeight, header.cubeWidth, header.cubeHeight, header.cubeDepth);
+				}
+				floatBlock = null;
+				floatTransform = null;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Input and output vectors of a slab.
+	 */
+	private static final class Slab {
+
+		private final byte[] pixels;
+		private final byte[] previousPixels;
+		private final short[] coefficients;
+		private final short[] previousCoefficients;
+		private final float[] transformed;
+		
+		private Slab(final byte[] pixels, final byte[] previousPixels, final short[] coefficients, final short[] previousCoefficients, final float[] transformed) {
+			this.pixels = pixels;
+			this.previousPixels = previousPixels;
+			this.coefficients = coefficients;
+			this.previousCoefficients = previousCoefficients;
+			this.transformed = transformed;
+		}
+		
+	}
+	
+	/**
+	 * Runnable that encodes a row of cubes.
+	 */
+	private final class RowWork implements Runnable {
+
+		private final Slab slab;
+		private final int y;
+		private final int rowOffset;
+		private final CountDownLatch countDownLatch;
+		private final AtomicReference<Throwable> failure;
+		
+		private RowWork(final Slab slab, final int y, final int rowOffset, final CountDownLatch countDownLatch, final AtomicReference<Throwable> failure) {
+			this.slab = slab;
+			this.y = y;
+			this.rowOffset = rowOffset;
+			this.countDownLatch = countDownLatch;
+			this.failure = failure;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				for (int x = 0, cubeOffset = rowOffset; x < header.width; x += header.cubeWidth, cubeOffset += cubeSize) {
+					encodeBlock(slab, x, y, cubeOffset);
+				}
+			} catch (RuntimeException | Error e) {
+				failure.compareAndSet(null, e);
+			} finally {
+				countDownLatch.countDown();
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,120 @@
+package br.jpiccoli.video;
+
+/**
+ * Conversion between interleaved RGB frames (three bytes per pixel, as written by {@link CaptureScreen}) and the
+ * Y, Cb and Cr planes of color videos (see {@link ContainerHeader#YCBCR_420}).
+ *
+ * The conversion uses the full range equations of JPEG (JFIF), computed in 16 bits fixed point. Each chroma
+ * sample is computed from the average color of a 2x2 square of pixels, and the chroma planes are completed
+ * up to their dimensions by repeating the last column and line of the frame. When the RGB frame is rebuilt,
+ * each chroma sample is used by the four pixels of its square.
+ *
+ * @author Juliano Piccoli
+ */
+final class YCbCr {
+
+	private static final int SHIFT = 16;
+	private static final int HALF = 1 << (SHIFT - 1);
+	private static final int CHROMA_OFFSET = 128 << SHIFT;
+	
+	// Coefficients of the forward conversion, scaled by 2^16
+	private static final int Y_R = 19595;
+	private static final int Y_G = 38470;
+	private static final int Y_B = 7471;
+	private static final int CB_R = -11059;
+	private static final int CB_G = -21709;
+	private static final int CB_B = 32768;
+	private static final int CR_R = 32768;
+	private static final int CR_G = -27439;
+	private static final int CR_B = -5329;
+	
+	// Coefficients of the inverse conversion, scaled by 2^16
+	private static final int R_CR = 91881;
+	private static final int G_CB = -22554;
+	private static final int G_CR = -46802;
+	private static final int B_CB = 116130;
+	
+	private final int width;
+	private final int height;
+	private final int chromaWidth;
+	private final int chromaHeight;
+	
+	/**
+	 * Constructor.
+	 * @param width Width of the frames.
+	 * @param height Height of the frames.
+	 * @param chromaWidth Width of the chroma planes.
+	 * @param chromaHeight Height of the chroma planes.
+	 */
+	YCbCr(final int width, final int height, final int chromaWidth, final int chromaHeight) {
+		this.width = width;
+		this.height = height;
+		this.chromaWidth = chromaWidth;
+		this.chromaHeight = chromaHeight;
+	}
+	
+	/**
+	 * Converts an RGB frame to the planes of a slab.
+	 * @param rgb RGB frame.
+	 * @param frame Index of the frame in the slab.
+	 * @param luma Luma plane of the slab.
+	 * @param cb Cb plane of the slab.
+	 * @param cr Cr plane of the slab.
+	 */
+	void fromRGB(final byte[] rgb, final int frame, final byte[] luma, final byte[] cb, final byte[] cr) {
+		
+		for (int index = 0, lumaOffset = frame * width * height; index < width * height; index++, lumaOffset++) {
+			final int r = rgb[index * 3] & 0xFF;
+			final int g = rgb[index * 3 + 1] & 0xFF;
+			final int b = rgb[index * 3 + 2] & 0xFF;
+			luma[lumaOffset] = (byte) ((Y_R * r + Y_G * g + Y_B * b + HALF) >> SHIFT);
+		}
+		
+		int chromaOffset = frame * chromaWidth * chromaHeight;
+		for (int y = 0; y < chromaHeight; y++) {
+			final int line0 = Math.min(2 * y, height - 1) * width;
+			final int line1 = Math.min(2 * y + 1, height - 1) * width;
+			for (int x = 0; x < chromaWidth; x++, chromaOffset++) {
+				final int column0 = Math.min(2 * x, width - 1);
+				final int column1 = Math.min(2 * x + 1, width - 1);
+				final int p0 = (line0 + column0) * 3;
+				final int p1 = (line0 + column1) * 3;
+				final int p2 = (line1 + column0) * 3;
+				final int p3 = (line1 + column1) * 3;
+				// Sums of the 2x2 square, so the results are divided by 4 as well
+				final int r = (rgb[p0] & 0xFF) + (rgb[p1] & 0xFF) + (rgb[p2] & 0xFF) + (rgb[p3] & 0xFF);
+				final int g = (rgb[p0 + 1] & 0xFF) + (rgb[p1 + 1] & 0xFF) + (rgb[p2 + 1] & 0xFF) + (rgb[p3 + 1] & 0xFF);
+				final int b = (rgb[p0 + 2] & 0xFF) + (rgb[p1 + 2] & 0xFF) + (rgb[p2 + 2] & 0xFF) + (rgb[p3 + 2] & 0xFF);
+				cb[chromaOffset] = (byte) clamp((CB_R * r + CB_G * g + CB_B * b + (CHROMA_OFFSET << 2) + (HALF << 2)) >> (SHIFT + 2));
+				cr[chromaOffset] = (byte) clamp((CR_R * r + CR_G * g + CR_B * b + (CHROMA_OFFSET << 2) + (HALF << 2)) >> (SHIFT + 2));
+			}
+		}
+		
+	}
+	
+	/**
+	 * Rebuilds an RGB frame from its planes.
+	 * @param luma Luma plane of the frame.
+	 * @param cb Cb plane of the frame.
+	 * @param cr Cr plane of the frame.
+	 * @param rgb RGB frame.
+	 */
+	void toRGB(final byte[] luma, final byte[] cb, final byte[] cr, final byte[] rgb) {
+		for (int y = 0, index = 0; y < height; y++) {
+			final int chromaLine = (y >> 1) * chromaWidth;
+			for (int x = 0; x < width; x++, index++) {
+				final int l = (luma[index] & 0xFF) << SHIFT;
+				final int u = (cb[chromaLine + (x >> 1)] & 0xFF) - 128;
+				final int v = (cr[chromaLine + (x >> 1)] & 0xFF) - 128;
+				rgb[index * 3] = (byte) clamp((l + R_CR * v + HALF) >> SHIFT);
+				rgb[index * 3 + 1] = (byte) clamp((l + G_CB * u + G_CR * v + HALF) >> SHIFT);
+				rgb[index * 3 + 2] = (byte) clamp((l + B_CB * u + HALF) >> SHIFT);
+			}
+		}
+	}
+	
+	private static int clamp(final int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+	
+}
@@ -0,0 +1,268 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * One dimensional DCT used by the separable transforms.
+ *
+ * The 3D DCT is separable: applying a 1D DCT over every row of a block, then over every column and
+ * finally over every frame produces the same result as the direct 3D formula. Each 1D transform is
+ * orthonormal, so the product of the three scale factors matches the scale used by {@link DCT}.
+ *
+ * Blocks with 8 elements per dimension use the Arai-Agui-Nakajima (AAN) factorization, which needs only
+ * 5 multiplications per 8 samples plus the final scaling (the inverse uses the matching AAN butterfly
+ * from the JPEG float IDCT). Other lengths fall back to a direct O(N^2) evaluation using a precomputed cosine table.
+ *
+ * @author Juliano Piccoli
+ */
+abstract class DCT1D {
+
+	/**
+	 * Creates a 1D DCT for the given length.
+	 * @param length Number of elements transformed by each call.
+	 * @return The 1D DCT implementation.
+	 */
+	static DCT1D forLength(final int length) {
+		if (length == 8) {
+			return new AAN8();
+		}
+		return new Direct(length);
+	}
+	
+	/**
+	 * Length of the transform.
+	 */
+	protected final int length;
+	
+	protected DCT1D(final int length) {
+		this.length = length;
+	}
+	
+	/**
+	 * Applies the forward DCT in place.
+	 *
+	 * @param data Vector containing the values.
+	 * @param offset Offset of the first value.
+	 * @param stride Distance between two consecutive values.
+	 * @param scratch Temporary vector with at least "length" elements. Implementations that
+	 * don't need temporary storage ignore it.
+	 */
+	abstract void forward(final double[] data, final int offset, final int stride, final double[] scratch);
+	
+	/**
+	 * Applies the inverse DCT in place.
+	 *
+	 * @param data Vector containing the values.
+	 * @param offset Offset of the first value.
+	 * @param stride Distance between two consecutive values.
+	 * @param scratch Temporary vector with at least "length" elements. Implementations that
+	 * don't need temporary storage ignore it.
+	 */
+	abstract void inverse(final double[] data, final int offset, final int stride, final double[] scratch);
+	
+	/**
+	 * Direct evaluation of the DCT formula. Used for lengths without a fast factorization.
+	 */
+	private static final class Direct extends DCT1D {
+
+		private final double[][] forwardCoefficients;
+		
+		private Direct(final int length) {
+			super(length);
+			this.forwardCoefficients = new double[length][length];
+			final double piOverLength = Math.PI / length;
+			final double scale = Math.sqrt(2.0d / length);
+			for (int k = 0; k < length; k++) {
+				final double c = k == 0 ? Transform.INVERSE_SQRT_2 : 1.0d;
+				for (int n = 0; n < length; n++) {
+					forwardCoefficients[k][n] = scale * c * Math.cos(piOverLength * (n + 0.5d) * k);
+				}
+			}
+		}
+		
+		@Override
+		void forward(final double[] data, final int offset, final int stride, final double[] scratch) {
+			for (int n = 0, position = offset; n < length; n++, position += stride) {
+				scratch[n] = data[position];
+			}
+			for (int k = 0, position = offset; k < length; k++, position += stride) {
+				final double[] coefficients = forwardCoefficients[k];
+				double value = 0;
+				for (int n = 0; n < length; n++) {
+					value += scratch[n] * coefficients[n];
+				}
+				data[position] = value;
+			}
+		}
+		
+		@Override
+		void inverse(final double[] data, final int offset, final int stride, final double[] scratch) {
+			for (int k = 0, position = offset; k < length; k++, position += stride) {
+				scratch[k] = data[position];
+			}
+			for (int n = 0, position = offset; n < length; n++, position += stride) {
+				double value = 0;
+				for (int k = 0; k < length; k++) {
+					value += scratch[k] * forwardCoefficients[k][n];
+				}
+				data[position] = value;
+			}
+		}
+		
+	}
+	
+	/**
+	 * The Arai-Agui-Nakajima factorization of the 8 point DCT.
+	 * The butterfly produces scaled outputs; the scale factors are folded into the
+	 * OUTPUT_SCALE table so that the result is the orthonormal DCT.
+	 */
+	private static final class AAN8 extends DCT1D {
+
+		private static final double C4 = Math.cos(4 * Math.PI / 16);	// 0.707106781
+		private static final double C6 = Math.cos(6 * Math.PI / 16);	// 0.382683433
+		private static final double C2_MINUS_C6 = Math.cos(2 * Math.PI / 16) - C6;	// 0.541196100
+		private static final double C2_PLUS_C6 = Math.cos(2 * Math.PI / 16) + C6;	// 1.306562965
+		
+		private static final double SQRT_2 = Math.sqrt(2.0d);	// 1.414213562
+		private static final double C2_TIMES_2 = 2 * Math.cos(2 * Math.PI / 16);	// 1.847759065
+		private static final double C2_MINUS_C6_TIMES_2 = 2 * C2_MINUS_C6;	// 1.082392200
+		private static final double C2_PLUS_C6_TIMES_2 = 2 * C2_PLUS_C6;	// 2.613125930
+		
+		private static final double[] OUTPUT_SCALE = new double[8];
+		private static final double[] INPUT_SCALE = new double[8];
+		
+		static {
+			// The AAN butterfly output k equals the plain DCT sum multiplied by
+			// 2 * cos(k * PI / 16) (or 1 for k = 0). Orthonormal output k is the
+			// plain sum multiplied by 1 / sqrt(8) for k = 0 and by 1 / 2 otherwise.
+			OUTPUT_SCALE[0] = 1.0d / Math.sqrt(8.0d);
+			for (int k = 1; k < 8; k++) {
+				OUTPUT_SCALE[k] = 0.25d / Math.cos(k * Math.PI / 16);
+			}
+			// The inverse butterfly expects input k to be pre-multiplied by the
+			// same factors that the forward butterfly applies to its outputs.
+			INPUT_SCALE[0] = 1.0d / Math.sqrt(8.0d);
+			for (int k = 1; k < 8; k++) {
+				INPUT_SCALE[k] = Math.cos(k * Math.PI / 16) / 2.0d;
+			}
+		}
+		
+		private AAN8() {
+			super(8);
+		}
+		
+		@Override
+		void forward(final double[] data, final int offset, final int stride, final double[] scratch) {
+			
+			final int p0 = offset;
+			final int p1 = p0 + stride;
+			final int p2 = p1 + stride;
+			final int p3 = p2 + stride;
+			final int p4 = p3 + stride;
+			final int p5 = p4 + stride;
+			final int p6 = p5 + stride;
+			final int p7 = p6 + stride;
+			
+			final double tmp0 = data[p0] + data[p7];
+			final double tmp7 = data[p0] - data[p7];
+			final double tmp1 = data[p1] + data[p6];
+			final double tmp6 = data[p1] - data[p6];
+			final double tmp2 = data[p2] + data[p5];
+			final double tmp5 = data[p2] - data[p5];
+			final double tmp3 = data[p3] + data[p4];
+			final double tmp4 = data[p3] - data[p4];
+			
+			// Even part
+			final double tmp10 = tmp0 + tmp3;
+			final double tmp13 = tmp0 - tmp3;
+			final double tmp11 = tmp1 + tmp2;
+			final double tmp12 = tmp1 - tmp2;
+			
+			data[p0] = (tmp10 + tmp11) * OUTPUT_SCALE[0];
+			data[p4] = (tmp10 - tmp11) * OUTPUT_SCALE[4];
+			
+			final double z1 = (tmp12 + tmp13) * C4;
+			data[p2] = (tmp13 + z1) * OUTPUT_SCALE[2];
+			data[p6] = (tmp13 - z1) * OUTPUT_SCALE[6];
+			
+			// Odd part
+			final double odd10 = tmp4 + tmp5;
+			final double odd11 = tmp5 + tmp6;
+			final double odd12 = tmp6 + tmp7;
+			
+			final double z5 = (odd10 - odd12) * C6;
+			final double z2 = C2_MINUS_C6 * odd10 + z5;
+			final double z4 = C2_PLUS_C6 * odd12 + z5;
+			final double z3 = odd11 * C4;
+			
+			final double z11 = tmp7 + z3;
+			final double z13 = tmp7 - z3;
+			
+			data[p5] = (z13 + z2) * OUTPUT_SCALE[5];
+			data[p3] = (z13 - z2) * OUTPUT_SCALE[3];
+			data[p1] = (z11 + z4) * OUTPUT_SCALE[1];
+			data[p7] = (z11 - z4) * OUTPUT_SCALE[7];
+			
+		}
+		
+		@Override
+		void inverse(final double[] data, final int offset, final int stride, final double[] scratch) {
+			
+			final int p0 = offset;
+			final int p1 = p0 + stride;
+			final int p2 = p1 + stride;
+			final int p3 = p2 + stride;
+			final int p4 = p3 + stride;
+			final int p5 = p4 + stride;
+			final int p6 = p5 + stride;
+			final int p7 = p6 + stride;
+			
+			// Even part
+			final double in0 = data[p0] * INPUT_SCALE[0];
+			final double in2 = data[p2] * INPUT_SCALE[2];
+			final double in4 = data[p4] * INPUT_SCALE[4];
+			final double in6 = data[p6] * INPUT_SCALE[6];
+			
+			final double tmp10 = in0 + in4;
+			final double tmp11 = in0 - in4;
+			final double tmp13 = in2 + in6;
+			final double tmp12 = (in2 - in6) * SQRT_2 - tmp13;
+			
+			final double tmp0 = tmp10 + tmp13;
+			final double tmp3 = tmp10 - tmp13;
+			final double tmp1 = tmp11 + tmp12;
+			final double tmp2 = tmp11 - tmp12;
+			
+			// Odd part
+			final double in1 = data[p1] * INPUT_SCALE[1];
+			final double in3 = data[p3] * INPUT_SCALE[3];
+			final double in5 = data[p5] * INPUT_SCALE[5];
+			final double in7 = data[p7] * INPUT_SCALE[7];
+			
+			final double z13 = in5 + in3;
+			final double z10 = in5 - in3;
+			final double z11 = in1 + in7;
+			final double z12 = in1 - in7;
+			
+			final double tmp7 = z11 + z13;
+			final double odd11 = (z11 - z13) * SQRT_2;
+			final double z5 = (z10 + z12) * C2_TIMES_2;
+			final double odd10 = C2_MINUS_C6_TIMES_2 * z12 - z5;
+			final double odd12 = z5 - C2_PLUS_C6_TIMES_2 * z10;
+			
+			final double tmp6 = odd12 - tmp7;
+			final double tmp5 = odd11 - tmp6;
+			final double tmp4 = odd10 + tmp5;
+			
+			data[p0] = tmp0 + tmp7;
+			data[p7] = tmp0 - tmp7;
+			data[p1] = tmp1 + tmp6;
+			data[p6] = tmp1 - tmp6;
+			data[p2] = tmp2 + tmp5;
+			data[p5] = tmp2 - tmp5;
+			data[p4] = tmp3 + tmp4;
+			data[p3] = tmp3 - tmp4;
+			
+		}
+		
+	}
+	
+}
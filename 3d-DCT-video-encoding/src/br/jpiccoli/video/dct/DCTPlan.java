@@ -0,0 +1,164 @@
+package br.jpiccoli.video.dct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled multiplication plan of the reference DCT (see {@link DCT}).
+ *
+ * The plan computes every output of a block as a sum of products between a few distinct input sums
+ * and their coefficients. It is compiled to flat vectors, which are traversed in order by the transform:
+ * 
+ * - The input offsets of sum s are sumOffsets[sumStarts[s]] to sumOffsets[sumStarts[s + 1] - 1];
+ * - The sums of output i are multiplicationSums[outputStarts[i]] to multiplicationSums[outputStarts[i + 1] - 1],
+ * each one multiplied by the coefficient stored at the same index of multiplicationCoefficients.
+ * 
+ * The offsets depend on the distances between the lines and the frames of a block in the input vector (see
+ * {@link Transform#setLayout(Transform.Layout)}), so a plan is compiled once for each combination of cube dimensions
+ * and distances and shared by all the transforms that use them.
+ *
+ * @author Juliano Piccoli
+ */
+final class DCTPlan {
+
+	private static final ConcurrentHashMap<List<Integer>, DCTPlan> PLANS = new ConcurrentHashMap<>();
+	
+	final int[] sumStarts;
+	final int[] sumOffsets;
+	final int[] outputStarts;
+	final int[] multiplicationSums;
+	final double[] multiplicationCoefficients;
+	
+	private DCTPlan(final int[] sumStarts, final int[] sumOffsets, final int[] outputStarts, final int[] multiplicationSums, final double[] multiplicationCoefficients) {
+		this.sumStarts = sumStarts;
+		this.sumOffsets = sumOffsets;
+		this.outputStarts = outputStarts;
+		this.multiplicationSums = multiplicationSums;
+		this.multiplicationCoefficients = multiplicationCoefficients;
+	}
+	
+	/**
+	 * @return Number of distinct sums of a block.
+	 */
+	int getSumsCount() {
+		return sumStarts.length - 1;
+	}
+	
+	/**
+	 * Gets the plan for the specified dimensions, compiling it on the first call.
+	 * @param lineStride Distance between consecutive lines of a block in the input vector.
+	 * @param frameStride Distance between consecutive frames of a block in the input vector.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 * @return The compiled plan.
+	 */
+	static DCTPlan get(final int lineStride, final int frameStride, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		return PLANS.computeIfAbsent(Arrays.asList(lineStride, frameStride, cubeWidth, cubeHeight, cubeDepth),
+				key -> compile(lineStride, frameStride, cubeWidth, cubeHeight, cubeDepth));
+	}
+	
+	/**
+	 * Computes all the coefficients that will be used in the transform and aggregates similar coefficients
+	 * to reduce the number of multiplications.
+	 * 
+	 * For example, the first DCT value is calculated using the following formula:
+	 * 
+	 * DCT[0] = input[0] * coefficients[0, 0] + input[1] * coefficients[0, 1] + ... + input[N] * coefficients[0, N]
+	 * 
+	 * The distributive property of multiplication is used to group equivalent coefficients. Assuming that
+	 * coefficients[0] and coefficients[1] are equal, for example, the equation is rewritten as below:
+	 * 
+	 * DCT[0] = (input[0] + input[1]) * coefficients[0, 0] + input[2] * coefficients[0, 1] + ... + input[N] * coefficients[0, N]
+	 * 
+	 * After grouping similar coefficients, the sums that are equivalent are identified, so each one is computed
+	 * only once per block. Developing on the same example, let's suppose that the equations for the first two
+	 * DCT values are:
+	 * 
+	 * DCT[0] = (input[0] + input[1]) * coefficients[0, 0] + input[2] * coefficients[0, 2] + ... + input[N] * coefficients[0, N]
+	 * DCT[1] = (input[0] + input[1]) * coefficients[1, 0] + input[2] * coefficient[1, 2] + ... +  input[N] * coefficients[1, N]
+	 * 
+	 * In this case, both equations contain the sum input[0] + input[1], which gets a single index in the plan.
+	 */
+	private static DCTPlan compile(final int lineStride, final int frameStride, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		
+		final int cubeSize = cubeWidth * cubeHeight * cubeDepth;
+		final double scale = Transform.DIMENSIONAL_FACTOR / Math.sqrt(cubeSize);
+		
+		final double piOverWidth = Math.PI / (float) cubeWidth;
+		final double piOverHeight = Math.PI / (float) cubeHeight;
+		final double piOverDepth = Math.PI / (float) cubeDepth;
+		
+		final Map<List<Integer>, Integer> sumsMap = new HashMap<>();
+		final List<List<Integer>> sums = new ArrayList<>();
+		final List<Integer> multiplicationSums = new ArrayList<>();
+		final List<Double> multiplicationCoefficients = new ArrayList<>();
+		final int[] outputStarts = new int[cubeSize + 1];
+		
+		int outputIndex = 0;
+		for (int k0 = 0; k0 < cubeDepth; k0++) {	
+			for (int k1 = 0; k1 < cubeHeight; k1++) {
+				for (int k2 = 0; k2 < cubeWidth; k2++, outputIndex++) {
+					
+					final double c0 = k0 == 0 ? Transform.INVERSE_SQRT_2 : 1;
+					final double c1 = k1 == 0 ? Transform.INVERSE_SQRT_2 : 1;
+					final double c2 = k2 == 0 ? Transform.INVERSE_SQRT_2 : 1;
+					
+					// Input offsets grouped by their coefficients
+					final Map<Long, List<Integer>> offsetsMap = new HashMap<>();
+					final Map<Long, Double> coefficientsMap = new HashMap<>();
+					
+					for (int n0 = 0; n0 < cubeDepth; n0++) {
+						for (int n1 = 0; n1 < cubeHeight; n1++) {
+							for (int n2 = 0; n2 < cubeWidth; n2++) {
+								
+								final int inputOffset = n0 * frameStride + n1 * lineStride + n2;
+								// Computing the coefficient
+								final double coefficient = scale * c0 * c1 * c2 * Math.cos(piOverDepth * (n0 + 0.5f) * k0) * Math.cos(piOverHeight * (n1 + 0.5f) * k1) * Math.cos(piOverWidth * (n2 + 0.5f) * k2);
+								// The double is converted to a long value for comparing the coefficients.
+								// The first 9 decimal places are taken into account for the comparison.
+								final long longCoefficient = (long) (coefficient * 1E9);
+								if (longCoefficient == 0) continue;	// Removing zero coefficients.
+								coefficientsMap.putIfAbsent(longCoefficient, coefficient);
+								offsetsMap.computeIfAbsent(longCoefficient, key -> new ArrayList<>()).add(inputOffset);
+								
+							}
+						}
+					}
+					
+					// The offsets are generated in increasing order, so equal sums have equal lists.
+					outputStarts[outputIndex] = multiplicationSums.size();
+					for (Map.Entry<Long, List<Integer>> entry : offsetsMap.entrySet()) {
+						multiplicationSums.add(sumsMap.computeIfAbsent(entry.getValue(), offsets -> {
+							sums.add(offsets);
+							return sums.size() - 1;
+						}));
+						multiplicationCoefficients.add(coefficientsMap.get(entry.getKey()));
+					}
+					
+				}
+			}
+		}
+		outputStarts[cubeSize] = multiplicationSums.size();
+		
+		final int[] sumStarts = new int[sums.size() + 1];
+		final int[] sumOffsets = new int[sums.stream().mapToInt(List::size).sum()];
+		for (int sum = 0, index = 0; sum < sums.size(); sum++) {
+			sumStarts[sum] = index;
+			for (Integer offset : sums.get(sum)) {
+				sumOffsets[index++] = offset;
+			}
+			sumStarts[sum + 1] = index;
+		}
+		
+		return new DCTPlan(sumStarts, sumOffsets, outputStarts,
+				multiplicationSums.stream().mapToInt(Integer::intValue).toArray(),
+				multiplicationCoefficients.stream().mapToDouble(Double::doubleValue).toArray());
+		
+	}
+	
+}
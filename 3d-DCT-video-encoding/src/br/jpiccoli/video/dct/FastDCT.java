@@ -0,0 +1,91 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * Separable implementation of the Discrete Cosine Transform.
+ *
+ * Instead of evaluating every output of the block as a weighted sum of all the inputs, the
+ * 3D DCT is computed as three passes of 1D DCTs: first over the rows of the block, then over
+ * the columns and finally over the frames. For 8x8x8 blocks each 1D DCT uses the AAN
+ * factorization (see {@link DCT1D}).
+ *
+ * The results are equivalent to the ones produced by {@link DCT} (up to floating point rounding).
+ *
+ * @author Juliano Piccoli
+ */
+public class FastDCT extends Transform {
+
+	private final DCT1D rowTransform;
+	private final DCT1D columnTransform;
+	private final DCT1D frameTransform;
+	private final ThreadLocal<double[]> block;
+	private final ThreadLocal<double[]> scratch;
+	
+	/**
+	 * Constructor.
+	 * @param input Input data vector.
+	 * @param output Output data vector.
+	 * @param frameWidth Width of each video frame.
+	 * @param frameHeight Height of each video frame.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 */
+	public FastDCT(final double[] input, final double[] output, final int frameWidth, final int frameHeight, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		super(input, output, frameWidth, frameHeight, cubeWidth, cubeHeight, cubeDepth);
+		this.rowTransform = DCT1D.forLength(cubeWidth);
+		this.columnTransform = DCT1D.forLength(cubeHeight);
+		this.frameTransform = DCT1D.forLength(cubeDepth);
+		// Temporary vectors of each thread, reused by all the blocks it transforms.
+		final int scratchLength = Math.max(cubeWidth, Math.max(cubeHeight, cubeDepth));
+		this.block = ThreadLocal.withInitial(() -> new double[cubeSize]);
+		this.scratch = ThreadLocal.withInitial(() -> new double[scratchLength]);
+	}
+	
+	/**
+	 * Apply the DCT to a single block.
+	 *
+	 * @see Transform
+	 */
+	protected void apply(final int x, final int y, final int z) {
+		
+		final double[] block = this.block.get();
+		final double[] scratch = this.scratch.get();
+		final int offset = getBlockOffset(x, y, z);
+		
+		// Copying the block to a contiguous vector
+		int blockIndex = 0;
+		for (int k0 = 0, frameOffset = offset; k0 < cubeDepth; k0++, frameOffset += frameStride) {
+			for (int k1 = 0, lineOffset = frameOffset; k1 < cubeHeight; k1++, lineOffset += lineStride) {
+				System.arraycopy(input, lineOffset, block, blockIndex, cubeWidth);
+				blockIndex += cubeWidth;
+			}
+		}
+		
+		// Rows
+		for (int lineOffset = 0; lineOffset < cubeSize; lineOffset += cubeWidth) {
+			rowTransform.forward(block, lineOffset, 1, scratch);
+		}
+		
+		// Columns
+		for (int frameOffset = 0; frameOffset < cubeSize; frameOffset += cubeFaceSize) {
+			for (int k2 = 0; k2 < cubeWidth; k2++) {
+				columnTransform.forward(block, frameOffset + k2, cubeWidth, scratch);
+			}
+		}
+		
+		// Frames
+		for (int faceOffset = 0; faceOffset < cubeFaceSize; faceOffset++) {
+			frameTransform.forward(block, faceOffset, cubeFaceSize, scratch);
+		}
+		
+		blockIndex = 0;
+		for (int k0 = 0, frameOffset = offset; k0 < cubeDepth; k0++, frameOffset += frameStride) {
+			for (int k1 = 0, lineOffset = frameOffset; k1 < cubeHeight; k1++, lineOffset += lineStride) {
+				System.arraycopy(block, blockIndex, output, lineOffset, cubeWidth);
+				blockIndex += cubeWidth;
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,135 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * Separable implementation of the inverse Discrete Cosine Transform.
+ *
+ * The inverse 3D DCT is computed as three passes of 1D inverse DCTs (rows, columns and frames).
+ * Since most of the dequantized coefficients are zero, every 1D line that contains only zeros
+ * is skipped (its inverse is also zero), and blocks containing only the DC coefficient are filled
+ * directly without running any pass.
+ *
+ * The results are equivalent to the ones produced by {@link InverseDCT} (up to floating point rounding).
+ *
+ * @author Juliano Piccoli
+ */
+public class FastInverseDCT extends Transform {
+
+	private final DCT1D rowTransform;
+	private final DCT1D columnTransform;
+	private final DCT1D frameTransform;
+	private final ThreadLocal<double[]> block;
+	private final ThreadLocal<double[]> scratch;
+	private final double dcScale;
+	
+	/**
+	 * Constructor.
+	 * @param input Input data vector.
+	 * @param output Output data vector.
+	 * @param frameWidth Width of each video frame.
+	 * @param frameHeight Height of each video frame.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 */
+	public FastInverseDCT(final double[] input, final double[] output, final int frameWidth, final int frameHeight, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		super(input, output, frameWidth, frameHeight, cubeWidth, cubeHeight, cubeDepth);
+		this.rowTransform = DCT1D.forLength(cubeWidth);
+		this.columnTransform = DCT1D.forLength(cubeHeight);
+		this.frameTransform = DCT1D.forLength(cubeDepth);
+		// Temporary vectors of each thread, reused by all the blocks it transforms.
+		final int scratchLength = Math.max(cubeWidth, Math.max(cubeHeight, cubeDepth));
+		this.block = ThreadLocal.withInitial(() -> new double[cubeSize]);
+		this.scratch = ThreadLocal.withInitial(() -> new double[scratchLength]);
+		this.dcScale = 1.0d / Math.sqrt(cubeSize);
+	}
+	
+	/**
+	 * Apply the inverse DCT to a single block.
+	 *
+	 * @see Transform
+	 */
+	protected void apply(final int x, final int y, final int z) {
+		
+		final int offset = getBlockOffset(x, y, z);
+		if (isDCOnlyBlock(x, y, z)) {
+			fillBlock(x, y, z, clamp(input[offset] * dcScale));
+			return;
+		}
+		
+		final double[] block = this.block.get();
+		
+		// Copying the block to a contiguous vector and checking whether any
+		// coefficient other than the DC is non-zero.
+		boolean acCoefficients = false;
+		int blockIndex = 0;
+		for (int k0 = 0, frameOffset = offset; k0 < cubeDepth; k0++, frameOffset += frameStride) {
+			for (int k1 = 0, lineOffset = frameOffset; k1 < cubeHeight; k1++, lineOffset += lineStride) {
+				for (int k2 = 0, inputOffset = lineOffset; k2 < cubeWidth; k2++, inputOffset++) {
+					final double value = input[inputOffset];
+					block[blockIndex] = value;
+					acCoefficients |= value != 0 && blockIndex != 0;
+					blockIndex++;
+				}
+			}
+		}
+		
+		if (!acCoefficients) {
+			// Only the DC coefficient is present: every pixel of the block has the same value.
+			fillBlock(x, y, z, clamp(block[0] * dcScale));
+			return;
+		}
+		
+		final double[] scratch = this.scratch.get();
+		
+		// Rows
+		for (int lineOffset = 0; lineOffset < cubeSize; lineOffset += cubeWidth) {
+			if (!isZero(block, lineOffset, 1, cubeWidth)) {
+				rowTransform.inverse(block, lineOffset, 1, scratch);
+			}
+		}
+		
+		// Columns
+		for (int frameOffset = 0; frameOffset < cubeSize; frameOffset += cubeFaceSize) {
+			for (int k2 = 0; k2 < cubeWidth; k2++) {
+				if (!isZero(block, frameOffset + k2, cubeWidth, cubeHeight)) {
+					columnTransform.inverse(block, frameOffset + k2, cubeWidth, scratch);
+				}
+			}
+		}
+		
+		// Frames
+		for (int faceOffset = 0; faceOffset < cubeFaceSize; faceOffset++) {
+			if (!isZero(block, faceOffset, cubeFaceSize, cubeDepth)) {
+				frameTransform.inverse(block, faceOffset, cubeFaceSize, scratch);
+			}
+		}
+		
+		/*
+		 * Assuming that the output values are color intensities, the minimum possible value is
+		 * zero and the maximum, 255.
+		 */
+		blockIndex = 0;
+		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameStride) {
+			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += lineStride) {
+				for (int n2 = 0, outputOffset = lineOffset; n2 < cubeWidth; n2++, outputOffset++) {
+					output[outputOffset] = clamp(block[blockIndex++]);
+				}
+			}
+		}
+		
+	}
+	
+	private static boolean isZero(final double[] data, final int offset, final int stride, final int length) {
+		for (int index = 0, position = offset; index < length; index++, position += stride) {
+			if (data[position] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static double clamp(final double value) {
+		return Math.max(0, Math.min(255.0d, value));
+	}
+	
+}
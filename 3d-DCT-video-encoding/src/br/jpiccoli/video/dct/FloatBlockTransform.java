@@ -0,0 +1,166 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * Single precision separable DCT over blocks stored in contiguous vectors.
+ *
+ * Unlike the {@link Transform} implementations, which read and write blocks at their positions inside
+ * the video frames, this class works over one block at a time, stored in a float vector in the order
+ * x (fastest), y, z. For 8 bits video the single precision is enough, and the contiguous float
+ * block halves the memory traffic and fits twice as many values in each SIMD register.
+ *
+ * Each instance owns a scratch vector, so it must not be shared among threads.
+ *
+ * @author Juliano Piccoli
+ */
+public class FloatBlockTransform {
+
+	private final FloatDCT1D rowTransform;
+	private final FloatDCT1D columnTransform;
+	private final FloatDCT1D frameTransform;
+	private final int cubeWidth;
+	private final int cubeHeight;
+	protected final int cubeDepth;
+	protected final int cubeFaceSize;
+	protected final int cubeSize;
+	protected final float dcScale;
+	private final float[] scratch;
+	
+	/**
+	 * Constructor.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 */
+	public FloatBlockTransform(final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		this.rowTransform = FloatDCT1D.forLength(cubeWidth);
+		this.columnTransform = FloatDCT1D.forLength(cubeHeight);
+		this.frameTransform = FloatDCT1D.forLength(cubeDepth);
+		this.cubeWidth = cubeWidth;
+		this.cubeHeight = cubeHeight;
+		this.cubeDepth = cubeDepth;
+		this.cubeFaceSize = cubeWidth * cubeHeight;
+		this.cubeSize = cubeFaceSize * cubeDepth;
+		this.dcScale = (float) (1.0d / Math.sqrt(cubeSize));
+		this.scratch = new float[Math.max(cubeWidth, Math.max(cubeHeight, cubeDepth))];
+	}
+	
+	/**
+	 * Name of the implementation that uses the Java Vector API. It is compiled separately (source folder
+	 * src-vector) because the API requires Java 16 or newer and the jdk.incubator.vector module.
+	 */
+	private static final String VECTOR_IMPLEMENTATION = "br.jpiccoli.video.dct.VectorFloatBlockTransform";
+	
+	/**
+	 * Creates the fastest single precision transform available for the given block dimensions.
+	 * The Vector API implementation processes a whole 8 values row or column of the block as one
+	 * 256 bits vector; it is used when the block faces are 8x8, the implementation is available in the
+	 * class path, the jdk.incubator.vector module is enabled and the processor supports 256 bits vectors.
+	 * Otherwise, this scalar implementation is returned.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 * @return The transform instance.
+	 */
+	public static FloatBlockTransform create(final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		if (cubeWidth == 8 && cubeHeight == 8) {
+			try {
+				return (FloatBlockTransform) Class.forName(VECTOR_IMPLEMENTATION)
+						.getConstructor(int.class, int.class, int.class)
+						.newInstance(cubeWidth, cubeHeight, cubeDepth);
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// Vector API not available: falling back to the scalar implementation.
+			}
+		}
+		return new FloatBlockTransform(cubeWidth, cubeHeight, cubeDepth);
+	}
+	
+	/**
+	 * @return Number of values of each block.
+	 */
+	public int getCubeSize() {
+		return cubeSize;
+	}
+	
+	/**
+	 * Applies the DCT to a block, in place.
+	 * @param block Vector containing the block.
+	 * @param offset Offset of the first value of the block.
+	 */
+	public void forward(final float[] block, final int offset) {
+		
+		final int end = offset + cubeSize;
+		
+		// Rows
+		for (int lineOffset = offset; lineOffset < end; lineOffset += cubeWidth) {
+			rowTransform.forward(block, lineOffset, 1, scratch);
+		}
+		
+		// Columns
+		for (int frameOffset = offset; frameOffset < end; frameOffset += cubeFaceSize) {
+			for (int k2 = 0; k2 < cubeWidth; k2++) {
+				columnTransform.forward(block, frameOffset + k2, cubeWidth, scratch);
+			}
+		}
+		
+		// Frames
+		for (int faceOffset = offset; faceOffset < offset + cubeFaceSize; faceOffset++) {
+			frameTransform.forward(block, faceOffset, cubeFaceSize, scratch);
+		}
+		
+	}
+	
+	/**
+	 * Applies the inverse DCT to a block, in place. As in {@link FastInverseDCT}, lines
+	 * containing only zeros are skipped and blocks containing only the DC coefficient are
+	 * filled directly. The output values are not clamped.
+	 * @param block Vector containing the block.
+	 * @param offset Offset of the first value of the block.
+	 */
+	public void inverse(final float[] block, final int offset) {
+		
+		final int end = offset + cubeSize;
+		
+		if (isZero(block, offset + 1, 1, cubeSize - 1)) {
+			// Only the DC coefficient is present: every value of the block is the same.
+			final float value = block[offset] * dcScale;
+			for (int index = offset; index < end; index++) {
+				block[index] = value;
+			}
+			return;
+		}
+		
+		// Rows
+		for (int lineOffset = offset; lineOffset < end; lineOffset += cubeWidth) {
+			if (!isZero(block, lineOffset, 1, cubeWidth)) {
+				rowTransform.inverse(block, lineOffset, 1, scratch);
+			}
+		}
+		
+		// Columns
+		for (int frameOffset = offset; frameOffset < end; frameOffset += cubeFaceSize) {
+			for (int k2 = 0; k2 < cubeWidth; k2++) {
+				if (!isZero(block, frameOffset + k2, cubeWidth, cubeHeight)) {
+					columnTransform.inverse(block, frameOffset + k2, cubeWidth, scratch);
+				}
+			}
+		}
+		
+		// Frames
+		for (int faceOffset = offset; faceOffset < offset + cubeFaceSize; faceOffset++) {
+			if (!isZero(block, faceOffset, cubeFaceSize, cubeDepth)) {
+				frameTransform.inverse(block, faceOffset, cubeFaceSize, scratch);
+			}
+		}
+		
+	}
+	
+	static boolean isZero(final float[] data, final int offset, final int stride, final int length) {
+		for (int index = 0, position = offset; index < length; index++, position += stride) {
+			if (data[position] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+}
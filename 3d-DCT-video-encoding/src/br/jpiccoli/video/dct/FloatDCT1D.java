@@ -0,0 +1,263 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * Single precision version of {@link DCT1D}, used by {@link FloatBlockTransform}.
+ *
+ * The factorizations are the same as the ones of {@link DCT1D}; only the arithmetic is done
+ * with floats. The cosine tables and scale factors are computed in double precision and rounded once.
+ *
+ * @author Juliano Piccoli
+ */
+abstract class FloatDCT1D {
+
+	/**
+	 * Creates a 1D DCT for the given length.
+	 * @param length Number of elements transformed by each call.
+	 * @return The 1D DCT implementation.
+	 */
+	static FloatDCT1D forLength(final int length) {
+		if (length == 8) {
+			return new AAN8();
+		}
+		return new Direct(length);
+	}
+	
+	/**
+	 * Length of the transform.
+	 */
+	protected final int length;
+	
+	protected FloatDCT1D(final int length) {
+		this.length = length;
+	}
+	
+	/**
+	 * Applies the forward DCT in place.
+	 *
+	 * @param data Vector containing the values.
+	 * @param offset Offset of the first value.
+	 * @param stride Distance between two consecutive values.
+	 * @param scratch Temporary vector with at least "length" elements. Implementations that
+	 * don't need temporary storage ignore it.
+	 */
+	abstract void forward(final float[] data, final int offset, final int stride, final float[] scratch);
+	
+	/**
+	 * Applies the inverse DCT in place.
+	 *
+	 * @param data Vector containing the values.
+	 * @param offset Offset of the first value.
+	 * @param stride Distance between two consecutive values.
+	 * @param scratch Temporary vector with at least "length" elements. Implementations that
+	 * don't need temporary storage ignore it.
+	 */
+	abstract void inverse(final float[] data, final int offset, final int stride, final float[] scratch);
+	
+	/**
+	 * Direct evaluation of the DCT formula. Used for lengths without a fast factorization.
+	 */
+	private static final class Direct extends FloatDCT1D {
+
+		private final float[][] forwardCoefficients;
+		
+		private Direct(final int length) {
+			super(length);
+			this.forwardCoefficients = new float[length][length];
+			final double piOverLength = Math.PI / length;
+			final double scale = Math.sqrt(2.0d / length);
+			for (int k = 0; k < length; k++) {
+				final double c = k == 0 ? Transform.INVERSE_SQRT_2 : 1.0d;
+				for (int n = 0; n < length; n++) {
+					forwardCoefficients[k][n] = (float) (scale * c * Math.cos(piOverLength * (n + 0.5d) * k));
+				}
+			}
+		}
+		
+		@Override
+		void forward(final float[] data, final int offset, final int stride, final float[] scratch) {
+			for (int n = 0, position = offset; n < length; n++, position += stride) {
+				scratch[n] = data[position];
+			}
+			for (int k = 0, position = offset; k < length; k++, position += stride) {
+				final float[] coefficients = forwardCoefficients[k];
+				float value = 0;
+				for (int n = 0; n < length; n++) {
+					value += scratch[n] * coefficients[n];
+				}
+				data[position] = value;
+			}
+		}
+		
+		@Override
+		void inverse(final float[] data, final int offset, final int stride, final float[] scratch) {
+			for (int k = 0, position = offset; k < length; k++, position += stride) {
+				scratch[k] = data[position];
+			}
+			for (int n = 0, position = offset; n < length; n++, position += stride) {
+				float value = 0;
+				for (int k = 0; k < length; k++) {
+					value += scratch[k] * forwardCoefficients[k][n];
+				}
+				data[position] = value;
+			}
+		}
+		
+	}
+	
+	/**
+	 * The Arai-Agui-Nakajima factorization of the 8 point DCT.
+	 * The butterfly produces scaled outputs; the scale factors are folded into the
+	 * OUTPUT_SCALE table so that the result is the orthonormal DCT.
+	 */
+	private static final class AAN8 extends FloatDCT1D {
+
+		private static final float C4 = (float) Math.cos(4 * Math.PI / 16);	// 0.707106781
+		private static final float C6 = (float) Math.cos(6 * Math.PI / 16);	// 0.382683433
+		private static final float C2_MINUS_C6 = (float) (Math.cos(2 * Math.PI / 16) - C6);	// 0.541196100
+		private static final float C2_PLUS_C6 = (float) (Math.cos(2 * Math.PI / 16) + C6);	// 1.306562965
+		
+		private static final float SQRT_2 = (float) Math.sqrt(2.0d);	// 1.414213562
+		private static final float C2_TIMES_2 = (float) (2 * Math.cos(2 * Math.PI / 16));	// 1.847759065
+		private static final float C2_MINUS_C6_TIMES_2 = 2 * C2_MINUS_C6;	// 1.082392200
+		private static final float C2_PLUS_C6_TIMES_2 = 2 * C2_PLUS_C6;	// 2.613125930
+		
+		private static final float[] OUTPUT_SCALE = new float[8];
+		private static final float[] INPUT_SCALE = new float[8];
+		
+		static {
+			// The AAN butterfly output k equals the plain DCT sum multiplied by
+			// 2 * cos(k * PI / 16) (or 1 for k = 0). Orthonormal output k is the
+			// plain sum multiplied by 1 / sqrt(8) for k = 0 and by 1 / 2 otherwise.
+			OUTPUT_SCALE[0] = (float) (1.0d / Math.sqrt(8.0d));
+			for (int k = 1; k < 8; k++) {
+				OUTPUT_SCALE[k] = (float) (0.25d / Math.cos(k * Math.PI / 16));
+			}
+			// The inverse butterfly expects input k to be pre-multiplied by the
+			// same factors that the forward butterfly applies to its outputs.
+			INPUT_SCALE[0] = (float) (1.0d / Math.sqrt(8.0d));
+			for (int k = 1; k < 8; k++) {
+				INPUT_SCALE[k] = (float) (Math.cos(k * Math.PI / 16) / 2.0d);
+			}
+		}
+		
+		private AAN8() {
+			super(8);
+		}
+		
+		@Override
+		void forward(final float[] data, final int offset, final int stride, final float[] scratch) {
+			
+			final int p0 = offset;
+			final int p1 = p0 + stride;
+			final int p2 = p1 + stride;
+			final int p3 = p2 + stride;
+			final int p4 = p3 + stride;
+			final int p5 = p4 + stride;
+			final int p6 = p5 + stride;
+			final int p7 = p6 + stride;
+			
+			final float tmp0 = data[p0] + data[p7];
+			final float tmp7 = data[p0] - data[p7];
+			final float tmp1 = data[p1] + data[p6];
+			final float tmp6 = data[p1] - data[p6];
+			final float tmp2 = data[p2] + data[p5];
+			final float tmp5 = data[p2] - data[p5];
+			final float tmp3 = data[p3] + data[p4];
+			final float tmp4 = data[p3] - data[p4];
+			
+			// Even part
+			final float tmp10 = tmp0 + tmp3;
+			final float tmp13 = tmp0 - tmp3;
+			final float tmp11 = tmp1 + tmp2;
+			final float tmp12 = tmp1 - tmp2;
+			
+			data[p0] = (tmp10 + tmp11) * OUTPUT_SCALE[0];
+			data[p4] = (tmp10 - tmp11) * OUTPUT_SCALE[4];
+			
+			final float z1 = (tmp12 + tmp13) * C4;
+			data[p2] = (tmp13 + z1) * OUTPUT_SCALE[2];
+			data[p6] = (tmp13 - z1) * OUTPUT_SCALE[6];
+			
+			// Odd part
+			final float odd10 = tmp4 + tmp5;
+			final float odd11 = tmp5 + tmp6;
+			final float odd12 = tmp6 + tmp7;
+			
+			final float z5 = (odd10 - odd12) * C6;
+			final float z2 = C2_MINUS_C6 * odd10 + z5;
+			final float z4 = C2_PLUS_C6 * odd12 + z5;
+			final float z3 = odd11 * C4;
+			
+			final float z11 = tmp7 + z3;
+			final float z13 = tmp7 - z3;
+			
+			data[p5] = (z13 + z2) * OUTPUT_SCALE[5];
+			data[p3] = (z13 - z2) * OUTPUT_SCALE[3];
+			data[p1] = (z11 + z4) * OUTPUT_SCALE[1];
+			data[p7] = (z11 - z4) * OUTPUT_SCALE[7];
+			
+		}
+		
+		@Override
+		void inverse(final float[] data, final int offset, final int stride, final float[] scratch) {
+			
+			final int p0 = offset;
+			final int p1 = p0 + stride;
+			final int p2 = p1 + stride;
+			final int p3 = p2 + stride;
+			final int p4 = p3 + stride;
+			final int p5 = p4 + stride;
+			final int p6 = p5 + stride;
+			final int p7 = p6 + stride;
+			
+			// Even part
+			final float in0 = data[p0] * INPUT_SCALE[0];
+			final float in2 = data[p2] * INPUT_SCALE[2];
+			final float in4 = data[p4] * INPUT_SCALE[4];
+			final float in6 = data[p6] * INPUT_SCALE[6];
+			
+			final float tmp10 = in0 + in4;
+			final float tmp11 = in0 - in4;
+			final float tmp13 = in2 + in6;
+			final float tmp12 = (in2 - in6) * SQRT_2 - tmp13;
+			
+			final float tmp0 = tmp10 + tmp13;
+			final float tmp3 = tmp10 - tmp13;
+			final float tmp1 = tmp11 + tmp12;
+			final float tmp2 = tmp11 - tmp12;
+			
+			// Odd part
+			final float in1 = data[p1] * INPUT_SCALE[1];
+			final float in3 = data[p3] * INPUT_SCALE[3];
+			final float in5 = data[p5] * INPUT_SCALE[5];
+			final float in7 = data[p7] * INPUT_SCALE[7];
+			
+			final float z13 = in5 + in3;
+			final float z10 = in5 - in3;
+			final float z11 = in1 + in7;
+			final float z12 = in1 - in7;
+			
+			final float tmp7 = z11 + z13;
+			final float odd11 = (z11 - z13) * SQRT_2;
+			final float z5 = (z10 + z12) * C2_TIMES_2;
+			final float odd10 = C2_MINUS_C6_TIMES_2 * z12 - z5;
+			final float odd12 = z5 - C2_PLUS_C6_TIMES_2 * z10;
+			
+			final float tmp6 = odd12 - tmp7;
+			final float tmp5 = odd11 - tmp6;
+			final float tmp4 = odd10 + tmp5;
+			
+			data[p0] = tmp0 + tmp7;
+			data[p7] = tmp0 - tmp7;
+			data[p1] = tmp1 + tmp6;
+			data[p6] = tmp1 - tmp6;
+			data[p2] = tmp2 + tmp5;
+			data[p5] = tmp2 - tmp5;
+			data[p4] = tmp3 + tmp4;
+			data[p3] = tmp3 - tmp4;
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,77 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * Inverse Discrete Cosine Transform computed in single precision.
+ *
+ * Each block is copied from the input vector to a contiguous float vector, inverse transformed
+ * by a {@link FloatBlockTransform} and copied back to the output vector. The results are equivalent
+ * to the ones produced by {@link FastInverseDCT}, with single precision rounding.
+ *
+ * @author Juliano Piccoli
+ */
+public class FloatInverseDCT extends Transform {
+
+	private final ThreadLocal<FloatBlockTransform> blockTransform;
+	private final ThreadLocal<float[]> block;
+	private final float dcScale;
+	
+	/**
+	 * Constructor.
+	 * @param input Input data vector.
+	 * @param output Output data vector.
+	 * @param frameWidth Width of each video frame.
+	 * @param frameHeight Height of each video frame.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 */
+	public FloatInverseDCT(final double[] input, final double[] output, final int frameWidth, final int frameHeight, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		super(input, output, frameWidth, frameHeight, cubeWidth, cubeHeight, cubeDepth);
+		this.blockTransform = ThreadLocal.withInitial(() -> FloatBlockTransform.create(cubeWidth, cubeHeight, cubeDepth));
+		this.block = ThreadLocal.withInitial(() -> new float[cubeSize]);
+		this.dcScale = (float) (1.0d / Math.sqrt(cubeSize));
+	}
+	
+	/**
+	 * Apply the inverse DCT to a single block.
+	 *
+	 * @see Transform
+	 */
+	protected void apply(final int x, final int y, final int z) {
+		
+		final int offset = getBlockOffset(x, y, z);
+		if (isDCOnlyBlock(x, y, z)) {
+			// Every pixel of the block has the same value.
+			fillBlock(x, y, z, Math.max(0, Math.min(255.0f, (float) input[offset] * dcScale)));
+			return;
+		}
+		
+		final float[] block = this.block.get();
+		
+		int blockIndex = 0;
+		for (int k0 = 0, frameOffset = offset; k0 < cubeDepth; k0++, frameOffset += frameStride) {
+			for (int k1 = 0, lineOffset = frameOffset; k1 < cubeHeight; k1++, lineOffset += lineStride) {
+				for (int k2 = 0, inputOffset = lineOffset; k2 < cubeWidth; k2++, inputOffset++) {
+					block[blockIndex++] = (float) input[inputOffset];
+				}
+			}
+		}
+		
+		blockTransform.get().inverse(block, 0);
+		
+		/*
+		 * Assuming that the output values are color intensities, the minimum possible value is
+		 * zero and the maximum, 255.
+		 */
+		blockIndex = 0;
+		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameStride) {
+			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += lineStride) {
+				for (int n2 = 0, outputOffset = lineOffset; n2 < cubeWidth; n2++, outputOffset++) {
+					output[outputOffset] = Math.max(0, Math.min(255.0f, block[blockIndex++]));
+				}
+			}
+		}
+		
+	}
+	
+}
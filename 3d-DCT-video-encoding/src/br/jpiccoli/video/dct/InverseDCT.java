@@ -8,7 +8,12 @@ package br.jpiccoli.video.dct;
  */
 public class InverseDCT extends Transform {
 
-	private double[][] coefficients;
+	// Coefficients of output i are stored at coefficients[i * cubeSize] to coefficients[(i + 1) * cubeSize - 1]
+	private double[] coefficients;
+	
+	// Non-zero inputs of the current block and their indexes, reused by all the blocks of each thread
+	private final ThreadLocal<double[]> nonZeroInputs;
+	private final ThreadLocal<int[]> nonZeroIndexes;
 	
 	/**
 	 * Constructor.
@@ -22,6 +27,8 @@ public class InverseDCT extends Transform {
 	 */
 	public InverseDCT(final double[] input, final double[] output, final int frameWidth, final int frameHeight, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
 		super(input, output, frameWidth, frameHeight, cubeWidth, cubeHeight, cubeDepth);
+		this.nonZeroInputs = ThreadLocal.withInitial(() -> new double[cubeSize]);
+		this.nonZeroIndexes = ThreadLocal.withInitial(() -> new int[cubeSize]);
 		initialize();
 	}
 	
@@ -32,9 +39,15 @@ public class InverseDCT extends Transform {
 	 */
 	protected void apply(final int x, final int y, final int z) {
 		
-		final int offset = z * frameSize + y * frameWidth + x;
+		final int offset = getBlockOffset(x, y, z);
 		final int cubeFaceSize = cubeWidth * cubeHeight;
 		
+		if (isDCOnlyBlock(x, y, z)) {
+			// The DC coefficient contributes equally to every pixel of the block.
+			fillBlock(x, y, z, Math.max(0, Math.min(255.0d, input[offset] * coefficients[0])));
+			return;
+		}
+		
 		/*
 		 * Iterates over the list of input data for the block looking for non-zero values.
 		 * Zero values are discarded because they don't contribute to the final result.
@@ -42,11 +55,11 @@ public class InverseDCT extends Transform {
 		 * zero.
 		 */		
 		int nonZeroInputsQuantity = 0;
-		final double[] nonZeroInputsVector = new double[cubeWidth * cubeHeight * cubeDepth];
-		final int[] coefficientsIndex = new int[cubeWidth * cubeHeight * cubeDepth];
+		final double[] nonZeroInputsVector = nonZeroInputs.get();
+		final int[] coefficientsIndex = nonZeroIndexes.get();
 
-		for (int k0 = 0, frameOffset = offset; k0 < cubeDepth; k0++, frameOffset += frameSize) {
-			for (int k1 = 0, lineOffset = frameOffset; k1 < cubeHeight; k1++, lineOffset += frameWidth) {
+		for (int k0 = 0, frameOffset = offset; k0 < cubeDepth; k0++, frameOffset += frameStride) {
+			for (int k1 = 0, lineOffset = frameOffset; k1 < cubeHeight; k1++, lineOffset += lineStride) {
 				for (int k2 = 0, inputOffset = lineOffset; k2 < cubeWidth; k2++, inputOffset++) {
 					if (Math.abs(input[inputOffset]) > 1E-9) {
 						nonZeroInputsVector[nonZeroInputsQuantity] = input[inputOffset];
@@ -56,13 +69,17 @@ public class InverseDCT extends Transform {
 			}
 		}
 		
-		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameSize) {
-			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += frameWidth) {
+		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameStride) {
+			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += lineStride) {
 				for (int n2 = 0, outputOffset = lineOffset; n2 < cubeWidth; n2++, outputOffset++) {
-					int outputIndex = n0 * cubeFaceSize + n1 * cubeWidth + n2;
+					final int coefficientsOffset = (n0 * cubeFaceSize + n1 * cubeWidth + n2) * cubeSize;
+					// The value is accumulated locally and then stored, so the output vector
+					// doesn't need to be cleared when the transform is executed again.
+					double value = 0;
 					for (int index = 0; index < nonZeroInputsQuantity; index++) {
-						output[outputOffset] += nonZeroInputsVector[index] * coefficients[outputIndex][coefficientsIndex[index]];
+						value += nonZeroInputsVector[index] * coefficients[coefficientsOffset + coefficientsIndex[index]];
 					}
+					output[outputOffset] = value;
 				}
 			}
 		}
@@ -71,8 +88,8 @@ public class InverseDCT extends Transform {
 		 * Assuming that the output values are color intensities, the minimum possible value is
 		 * zero and the maximum, 255.
 		 */
-		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameSize) {
-			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += frameWidth) {
+		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameStride) {
+			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += lineStride) {
 				for (int n2 = 0, outputOffset = lineOffset; n2 < cubeWidth; n2++, outputOffset++) {
 					output[outputOffset] = Math.max(0, Math.min(255.0d, output[outputOffset]));
 				}
@@ -86,7 +103,7 @@ public class InverseDCT extends Transform {
 	 */
 	private void initialize() {
 		
-		this.coefficients = new double[cubeSize][cubeSize];
+		this.coefficients = new double[cubeSize * cubeSize];
 		final double scale = (double) (DIMENSIONAL_FACTOR / Math.sqrt(cubeSize));
 		
 		final double piOverWidth = Math.PI / (float) cubeWidth;
@@ -99,7 +116,7 @@ public class InverseDCT extends Transform {
 			for (int n1 = 0; n1 < cubeHeight; n1++) {
 				for (int n2 = 0; n2 < cubeWidth; n2++) {
 					
-					final int outputIndex = n0 * cubeFaceSize + n1 * cubeWidth + n2;
+					final int outputOffset = (n0 * cubeFaceSize + n1 * cubeWidth + n2) * cubeSize;
 					
 					for (int k0 = 0; k0 < cubeDepth; k0++) {
 						for (int k1 = 0; k1 < cubeHeight; k1++) {
@@ -120,7 +137,7 @@ public class InverseDCT extends Transform {
 								
 								final int inputIndex = k0 * cubeFaceSize + k1 * cubeWidth + k2;
 								
-								coefficients[outputIndex][inputIndex] = scale * c0 * c1 * c2 * Math.cos(piOverDepth * (n0 + 0.5f) * k0) * Math.cos(piOverHeight * (n1 + 0.5f) * k1) * Math.cos(piOverWidth * (n2 + 0.5f) * k2);
+								coefficients[outputOffset + inputIndex] = scale * c0 * c1 * c2 * Math.cos(piOverDepth * (n0 + 0.5f) * k0) * Math.cos(piOverHeight * (n1 + 0.5f) * k1) * Math.cos(piOverWidth * (n2 + 0.5f) * k2);
 								
 							}
 						}
@@ -0,0 +1,109 @@
+package br.jpiccoli.video.dct;
+
+/**
+ * Conversion between the raster layout of the video (frame after frame, each frame stored line after line) and the
+ * tiled layout of the transforms (see {@link Transform.Layout#TILED}).
+ *
+ * In the tiled layout, the samples of each block are contiguous, so each block is read and written as a
+ * single stretch of memory instead of one line per frame, with lines that are a frame apart. The blocks are
+ * stored from left to right, from top to bottom and then slab after slab, and the samples of each block frame
+ * after frame and line after line. The vectors are converted at the I/O boundary of the codec.
+ *
+ * @author Juliano Piccoli
+ */
+public final class TiledLayout {
+
+	private final int frameWidth;
+	private final int frameHeight;
+	private final int cubeWidth;
+	private final int cubeHeight;
+	private final int cubeDepth;
+	private final int cubeFaceSize;
+	private final int cubeSize;
+	private final int frameSize;
+	private final int blocksPerFrame;
+	
+	/**
+	 * Constructor.
+	 * @param frameWidth Width of each video frame.
+	 * @param frameHeight Height of each video frame.
+	 * @param cubeWidth Width of each transform block.
+	 * @param cubeHeight Height of each transform block.
+	 * @param cubeDepth Depth of each transform block.
+	 */
+	public TiledLayout(final int frameWidth, final int frameHeight, final int cubeWidth, final int cubeHeight, final int cubeDepth) {
+		this.frameWidth = frameWidth;
+		this.frameHeight = frameHeight;
+		this.cubeWidth = cubeWidth;
+		this.cubeHeight = cubeHeight;
+		this.cubeDepth = cubeDepth;
+		this.cubeFaceSize = cubeWidth * cubeHeight;
+		this.cubeSize = cubeFaceSize * cubeDepth;
+		this.frameSize = frameWidth * frameHeight;
+		this.blocksPerFrame = (frameWidth / cubeWidth) * (frameHeight / cubeHeight);
+	}
+	
+	/**
+	 * Converts a vector from the raster layout to the tiled layout.
+	 * @param raster Input vector, holding whole slabs of cubeDepth frames.
+	 * @param tiled Output vector, with the same length.
+	 */
+	public void fromRaster(final double[] raster, final double[] tiled) {
+		int tiledOffset = 0;
+		for (int z = 0; z < raster.length / frameSize; z += cubeDepth) {
+			for (int y = 0; y < frameHeight; y += cubeHeight) {
+				for (int x = 0; x < frameWidth; x += cubeWidth) {
+					for (int k = 0, frameOffset = z * frameSize + y * frameWidth + x; k < cubeDepth; k++, frameOffset += frameSize) {
+						for (int i = 0, lineOffset = frameOffset; i < cubeHeight; i++, lineOffset += frameWidth) {
+							System.arraycopy(raster, lineOffset, tiled, tiledOffset, cubeWidth);
+							tiledOffset += cubeWidth;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Converts a vector from the tiled layout to the raster layout.
+	 * @param tiled Input vector, holding whole slabs of cubeDepth frames.
+	 * @param raster Output vector, with the same length.
+	 */
+	public void toRaster(final double[] tiled, final double[] raster) {
+		int tiledOffset = 0;
+		for (int z = 0; z < tiled.length / frameSize; z += cubeDepth) {
+			for (int y = 0; y < frameHeight; y += cubeHeight) {
+				for (int x = 0; x < frameWidth; x += cubeWidth) {
+					for (int k = 0, frameOffset = z * frameSize + y * frameWidth + x; k < cubeDepth; k++, frameOffset += frameSize) {
+						for (int i = 0, lineOffset = frameOffset; i < cubeHeight; i++, lineOffset += frameWidth) {
+							System.arraycopy(tiled, tiledOffset, raster, lineOffset, cubeWidth);
+							tiledOffset += cubeWidth;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Extracts a single frame of a tiled vector of pixels, in raster order and one byte per pixel.
+	 * @param tiled Input vector.
+	 * @param frame Index of the frame in the input vector.
+	 * @param frameData Output vector, with the size of a frame.
+	 */
+	public void toRaster(final double[] tiled, final int frame, final byte[] frameData) {
+		final int frameOffset = (frame / cubeDepth) * blocksPerFrame * cubeSize + (frame % cubeDepth) * cubeFaceSize;
+		final int blocksRowSize = (frameWidth / cubeWidth) * cubeSize;
+		int pixelOffset = 0;
+		for (int y = 0, rowOffset = frameOffset; y < frameHeight; y += cubeHeight, rowOffset += blocksRowSize) {
+			for (int i = 0, lineOffset = rowOffset; i < cubeHeight; i++, lineOffset += cubeWidth) {
+				for (int blockOffset = lineOffset; blockOffset < lineOffset + blocksRowSize; blockOffset += cubeSize) {
+					for (int j = 0; j < cubeWidth; j++) {
+						frameData[pixelOffset++] = (byte) tiled[blockOffset + j];
+					}
+				}
+			}
+		}
+	}
+	
+}
@@ -1,17 +1,77 @@
 package br.jpiccoli.video.dct;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Base class for both the DCT and the inverse DCT transforms.
  * 
+ * The blocks are distributed among the threads in tasks that cover a range of consecutive blocks
+ * (see {@link Scheduling}), so the number of tasks is much smaller than the number of blocks and
+ * each task walks through neighbouring blocks. The implementations keep their temporary vectors
+ * per thread, so they are reused by all the blocks processed by the same thread.
+ * 
  * @author Juliano Piccoli
  */
 public abstract class Transform {
 
+	/**
+	 * How the blocks are grouped into tasks by {@link Transform#run(Executor)}.
+	 */
+	public enum Scheduling {
+
+		/**
+		 * One task per block.
+		 */
+		BLOCK,
+		
+		/**
+		 * One task per row of blocks (the default).
+		 */
+		ROW,
+		
+		/**
+		 * One task per slab of blocks (cubeDepth frames). Only useful for vectors holding many slabs.
+		 */
+		SLAB,
+		
+		/**
+		 * Ranges of blocks recursively split in halves down to a row of blocks, balanced among the threads
+		 * by work stealing. Requires a {@link ForkJoinPool}; with other executors, the blocks are scheduled
+		 * by rows.
+		 */
+		RECURSIVE
+		
+	}
+	
+	/**
+	 * Order of the samples in the input and output vectors, selected by {@link Transform#setLayout(Layout)}.
+	 */
+	public enum Layout {
+
+		/**
+		 * Frame after frame, each frame stored line after line (the default).
+		 */
+		RASTER,
+		
+		/**
+		 * Block after block, in the order they are scheduled. The samples of each block are contiguous,
+		 * stored frame after frame and line after line (see {@link TiledLayout}).
+		 */
+		TILED
+		
+	}
+	
+	/**
+	 * Pools used by {@link #run()} and {@link #run(int)}, by number of threads. The pools
+	 * live as long as the application, so the threads are reused by every call.
+	 */
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
 	/*
 	 * The number 3.0 in the expression below represents the number of dimensions of the
 	 * cubes processed by the DCT and inverse DCT transforms. This expression is used in the
@@ -30,6 +90,21 @@ public abstract class Transform {
 	protected final int cubeFaceSize;
 	protected final int cubeSize;
 	protected final int frameSize;
+	
+	/**
+	 * Distances between the first samples of consecutive lines and frames of a block in the input and output
+	 * vectors, which depend on the layout.
+	 */
+	protected int lineStride;
+	protected int frameStride;
+	
+	/**
+	 * Blocks of the input that only contain the DC coefficient, if known (see {@link #setDCOnlyBlocks(boolean[])}).
+	 */
+	protected boolean[] dcOnlyBlocks;
+	
+	private Scheduling scheduling = Scheduling.ROW;
+	private Layout layout = Layout.RASTER;
 
 	/**
 	 * Constructor.
@@ -53,8 +128,48 @@ public abstract class Transform {
 		this.cubeFaceSize = cubeWidth * cubeHeight;
 		this.cubeSize = cubeFaceSize * cubeDepth;
 		this.frameSize = frameWidth * frameHeight;
+		this.lineStride = frameWidth;
+		this.frameStride = frameSize;
 	}
 
+	/**
+	 * Marks the blocks of the input that only contain the DC coefficient. The inverse transforms fill
+	 * these blocks directly, without reading their other coefficients, which don't need to be set.
+	 * 
+	 * @param dcOnlyBlocks One flag per block, with the blocks listed from left to right, from top to
+	 * bottom and then frame after frame, or null when the blocks are unknown. The flags are read every
+	 * time the transform runs.
+	 */
+	public void setDCOnlyBlocks(final boolean[] dcOnlyBlocks) {
+		this.dcOnlyBlocks = dcOnlyBlocks;
+	}
+	
+	/**
+	 * Selects how the blocks are grouped into tasks.
+	 * 
+	 * @param scheduling Scheduling of the blocks.
+	 */
+	public void setScheduling(final Scheduling scheduling) {
+		this.scheduling = scheduling;
+	}
+	
+	/**
+	 * Selects the order of the samples in the input and output vectors. With the tiled layout, the samples of
+	 * each block are read and written contiguously.
+	 * 
+	 * @param layout Layout of both vectors.
+	 */
+	public void setLayout(final Layout layout) {
+		this.layout = layout;
+		if (layout == Layout.TILED) {
+			lineStride = cubeWidth;
+			frameStride = cubeFaceSize;
+		} else {
+			lineStride = frameWidth;
+			frameStride = frameSize;
+		}
+	}
+	
 	/**
 	 * Executes the transform using multiple threads.
 	 * 
@@ -65,21 +180,21 @@ public abstract class Transform {
 	}
 	
 	/**
-	 * Executes the transform using the provided number of threads.
+	 * Executes the transform using the provided number of threads. The threads belong to a pool
+	 * shared by all the transforms, which is created by the first call with this number of threads.
 	 * 
 	 * @param threads Number of threads that will execute the transform.
 	 * 
 	 * @throws InterruptedException
 	 */
 	public void run(int threads) throws InterruptedException {
-		final ExecutorService executor = Executors.newFixedThreadPool(threads);
-		run(executor);
-		executor.shutdown();
+		run(POOLS.computeIfAbsent(threads, ForkJoinPool::new));
 	}
 	
 	/**
 	 * Executes the transform using the given executor.
-	 * This method blocks the calling thread until the computation is completed.
+	 * This method blocks the calling thread until the computation is completed. If any task fails, the
+	 * exception of the first failure is thrown once all the tasks are done.
 	 * 
 	 * @param executor Executor that will be used to dispatch the transform tasks.
 	 * 
@@ -88,21 +203,145 @@ public abstract class Transform {
 	public void run(final Executor executor) throws InterruptedException {
 		
 		final int framesCount = input.length / frameSize;
-		final int cubesCount = (frameSize * framesCount) / cubeSize;
-		final CountDownLatch countDownLatch = new CountDownLatch(cubesCount);
+		final int blocksPerRow = frameWidth / cubeWidth;
+		final int blocksPerSlab = blocksPerRow * (frameHeight / cubeHeight);
+		final int blocksCount = blocksPerSlab * (framesCount / cubeDepth);
+		
+		if (scheduling == Scheduling.RECURSIVE && executor instanceof ForkJoinPool) {
+			((ForkJoinPool) executor).invoke(new RangeWork(0, blocksCount, blocksPerRow));
+			return;
+		}
+		
+		final int blocksPerTask;
+		if (scheduling == Scheduling.BLOCK) {
+			blocksPerTask = 1;
+		} else if (scheduling == Scheduling.SLAB) {
+			blocksPerTask = blocksPerSlab;
+		} else {
+			blocksPerTask = blocksPerRow;
+		}
 		
-		for (int z = 0; z < framesCount; z += cubeDepth) {
-			for (int y = 0; y < frameHeight; y += cubeHeight) {
-				for (int x = 0; x < frameWidth; x += cubeWidth) {
-					executor.execute(new Work(this, x, y, z, countDownLatch));
+		final CountDownLatch countDownLatch = new CountDownLatch((blocksCount + blocksPerTask - 1) / blocksPerTask);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		for (int block = 0; block < blocksCount; block += blocksPerTask) {
+			executor.execute(new Work(this, block, Math.min(block + blocksPerTask, blocksCount), countDownLatch, failure));
+		}
+		countDownLatch.await();
+		// As with the recursive scheduling, a failed task fails the whole transform.
+		final Throwable error = failure.get();
+		if (error instanceof Error) {
+			throw (Error) error;
+		} else if (error != null) {
+			throw (RuntimeException) error;
+		}
+		
+	}
+	
+	/**
+	 * Applies the transform to a range of blocks, in the order they are scheduled: from left to right,
+	 * from top to bottom and then slab after slab.
+	 * 
+	 * @param firstBlock Index of the first block.
+	 * @param endBlock Index of the block that follows the last one.
+	 */
+	void applyRange(final int firstBlock, final int endBlock) {
+		final int blocksPerRow = frameWidth / cubeWidth;
+		final int blocksPerSlab = blocksPerRow * (frameHeight / cubeHeight);
+		int z = (firstBlock / blocksPerSlab) * cubeDepth;
+		int y = ((firstBlock % blocksPerSlab) / blocksPerRow) * cubeHeight;
+		int x = (firstBlock % blocksPerRow) * cubeWidth;
+		for (int block = firstBlock; block < endBlock; block++) {
+			apply(x, y, z);
+			x += cubeWidth;
+			if (x == frameWidth) {
+				x = 0;
+				y += cubeHeight;
+				if (y == frameHeight) {
+					y = 0;
+					z += cubeDepth;
 				}
 			}
 		}
+	}
+	
+	/**
+	 * Task that splits a range of blocks in halves until it has at most a row of blocks.
+	 */
+	private final class RangeWork extends RecursiveAction {
 		
-		countDownLatch.await();
+		private static final long serialVersionUID = 1L;
+		
+		private final int firstBlock;
+		private final int endBlock;
+		private final int threshold;
+		
+		private RangeWork(final int firstBlock, final int endBlock, final int threshold) {
+			this.firstBlock = firstBlock;
+			this.endBlock = endBlock;
+			this.threshold = threshold;
+		}
+		
+		@Override
+		protected void compute() {
+			if (endBlock - firstBlock <= threshold) {
+				applyRange(firstBlock, endBlock);
+			} else {
+				final int middle = (firstBlock + endBlock) >>> 1;
+				invokeAll(new RangeWork(firstBlock, middle, threshold), new RangeWork(middle, endBlock, threshold));
+			}
+		}
 		
 	}
 	
+	/**
+	 * Executes the transform over a single block, in the calling thread.
+	 * This is used by pipelines that process one block at a time: the input and output
+	 * vectors of the transform hold exactly one block (the frame dimensions are equal to the
+	 * block dimensions), so the block data stays contiguous and can be refilled for every block.
+	 */
+	public void runSingleBlock() {
+		apply(0, 0, 0);
+	}
+	
+	/**
+	 * @return Offset of the first sample of the block starting at the given coordinates in the input and output vectors.
+	 */
+	protected int getBlockOffset(final int x, final int y, final int z) {
+		if (layout == Layout.TILED) {
+			final int blocksPerRow = frameWidth / cubeWidth;
+			final int blocksPerFrame = blocksPerRow * (frameHeight / cubeHeight);
+			return ((z / cubeDepth) * blocksPerFrame + (y / cubeHeight) * blocksPerRow + x / cubeWidth) * cubeSize;
+		}
+		return z * frameSize + y * frameWidth + x;
+	}
+	
+	/**
+	 * @return Whether the block starting at the given coordinates was marked as containing only the DC coefficient.
+	 */
+	protected boolean isDCOnlyBlock(final int x, final int y, final int z) {
+		if (dcOnlyBlocks == null) {
+			return false;
+		}
+		final int blocksPerRow = frameWidth / cubeWidth;
+		final int blocksPerFrame = blocksPerRow * (frameHeight / cubeHeight);
+		return dcOnlyBlocks[(z / cubeDepth) * blocksPerFrame + (y / cubeHeight) * blocksPerRow + x / cubeWidth];
+	}
+	
+	/**
+	 * Sets every output value of a block. Used by the inverse transforms for blocks that only contain
+	 * the DC coefficient, whose pixels all have the same value.
+	 */
+	protected void fillBlock(final int x, final int y, final int z, final double value) {
+		final int offset = getBlockOffset(x, y, z);
+		for (int n0 = 0, frameOffset = offset; n0 < cubeDepth; n0++, frameOffset += frameStride) {
+			for (int n1 = 0, lineOffset = frameOffset; n1 < cubeHeight; n1++, lineOffset += lineStride) {
+				for (int n2 = 0, outputOffset = lineOffset; n2 < cubeWidth; n2++, outputOffset++) {
+					output[outputOffset] = value;
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Apply the transform to a single block.
 	 * 
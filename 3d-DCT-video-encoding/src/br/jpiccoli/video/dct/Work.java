@@ -1,31 +1,39 @@
 package br.jpiccoli.video.dct;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Runnable containing part of the DCT/Inverse DCT transform work.
+ * Runnable containing part of the DCT/Inverse DCT transform work: a range of consecutive blocks.
+ * The latch is released even when the work fails, and the first failure is kept so the thread
+ * waiting for the transform can throw it.
  * 
  * @author Juliano Piccoli
  */
 class Work implements Runnable {
 	
 	private final Transform dct;
-	private final int x;
-	private final int y;
-	private final int z;
+	private final int firstBlock;
+	private final int endBlock;
 	private final CountDownLatch countDownLatch;
+	private final AtomicReference<Throwable> failure;
 
-	Work(final Transform dct, final int x, final int y, final int z, final CountDownLatch countDownLatch) {
+	Work(final Transform dct, final int firstBlock, final int endBlock, final CountDownLatch countDownLatch, final AtomicReference<Throwable> failure) {
 		this.dct = dct;
-		this.x = x;
-		this.y = y;
-		this.z = z;
+		this.firstBlock = firstBlock;
+		this.endBlock = endBlock;
 		this.countDownLatch = countDownLatch;
+		this.failure = failure;
 	}
 
 	public void run() {
-		dct.apply(x, y, z);
-		countDownLatch.countDown();
+		try {
+			dct.applyRange(firstBlock, endBlock);
+		} catch (RuntimeException | Error e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			countDownLatch.countDown();
+		}
 	}
 
 }
@@ -0,0 +1,278 @@
+package br.jpiccoli.video;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Encodes and decodes short synthetic videos with the Encoder and Decoder programs, and checks that the
+ * decoded videos are close to the original ones for every entropy coding, cube size, scan order, quality level, rate
+ * control mode and color format.
+ *
+ * @author Juliano Piccoli
+ */
+public class CodecTest {
+
+	private static final int WIDTH = 64;
+	private static final int HEIGHT = 48;
+	private static final int CUBE_DEPTH = 8;
+	
+	// Not a multiple of the cube depths, so the last group of frames is padded.
+	private static final int FRAMES = 20;
+	
+	@TempDir
+	Path directory;
+	
+	@ParameterizedTest
+	@CsvSource({
+		"expgolomb, 8x8x8", "runlength, 8x8x8", "arithmetic, 8x8x8",
+		"expgolomb, 4x4x4", "runlength, 4x4x4", "arithmetic, 4x4x4",
+		"expgolomb, 8x8x16", "runlength, 8x8x16", "arithmetic, 8x8x16"
+	})
+	public void grayscaleRoundTrip(final String entropy, final String cube) throws Exception {
+		final byte[] video = grayscaleVideo();
+		final byte[] decoded = roundTrip(video, "-entropy", entropy, "-cube", cube);
+		assertEquals(video.length, decoded.length);
+		assertTrue(psnr(video, decoded) > 35, "PSNR: " + psnr(video, decoded));
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "expgolomb", "runlength", "arithmetic" })
+	public void colorRoundTrip(final String entropy) throws Exception {
+		final byte[] video = colorVideo();
+		final byte[] decoded = roundTrip(video, "-entropy", entropy, "-color", "ycbcr420");
+		assertEquals(video.length, decoded.length);
+		assertTrue(psnr(video, decoded) > 30, "PSNR: " + psnr(video, decoded));
+	}
+	
+	@ParameterizedTest
+	@CsvSource({
+		"expgolomb, spatial", "runlength, spatial", "arithmetic, spatial",
+		"expgolomb, temporal", "runlength, temporal", "arithmetic, temporal"
+	})
+	public void scanOrderRoundTrip(final String entropy, final String scan) throws Exception {
+		final byte[] video = grayscaleVideo();
+		// The scan order only changes the order in which the coefficients are coded.
+		assertArrayEquals(roundTrip(video, "-entropy", entropy), roundTrip(video, "-entropy", entropy, "-scan", scan));
+	}
+	
+	@ParameterizedTest
+	@CsvSource({ "10, 34", "50, 40", "90, 43" })
+	public void qualityRoundTrip(final int quality, final double minimumPsnr) throws Exception {
+		final byte[] video = grayscaleVideo();
+		final byte[] decoded = roundTrip(video, "-quality", Integer.toString(quality));
+		assertEquals(video.length, decoded.length);
+		assertTrue(psnr(video, decoded) > minimumPsnr, "PSNR: " + psnr(video, decoded));
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "1", "2" })
+	public void rateControlRoundTrip(final String passes) throws Exception {
+		final byte[] video = grayscaleVideo();
+		final byte[] decoded = roundTrip(video, "-bitrate", "200000", "-passes", passes);
+		assertEquals(video.length, decoded.length);
+		assertTrue(psnr(video, decoded) > 25, "PSNR: " + psnr(video, decoded));
+	}
+	
+	@Test
+	public void twoPassEncodingMeetsTheBitrate() throws Exception {
+		final File encoded = encode(grayscaleVideo(), "-bitrate", "100000", "-fps", "30", "-passes", "2");
+		final double targetSize = 100000.0d * FRAMES / 30 / 8;
+		assertTrue(Math.abs(encoded.length() - targetSize) < targetSize / 4, "Size: " + encoded.length());
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "grayscale", "ycbcr420" })
+	public void staticVideoSkipsUnchangedCubes(final String color) throws Exception {
+		final boolean grayscale = color.equals("grayscale");
+		final byte[] video = staticVideo(grayscale ? grayscaleVideo() : colorVideo());
+		final PrintStream standardOutput = System.out;
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final File encoded;
+		System.setOut(new PrintStream(output, true));
+		try {
+			encoded = encode(video, "-color", color);
+		} finally {
+			System.setOut(standardOutput);
+		}
+		// Every cube after the first slab is equal to the co-located cube of the previous slab.
+		final int slabs = (FRAMES + CUBE_DEPTH - 1) / CUBE_DEPTH;
+		final int lumaCubes = (WIDTH / 8) * (HEIGHT / 8);
+		// Each chroma plane of the 4:2:0 format has half the width and half the height of the frames.
+		final int cubesPerSlab = grayscale ? lumaCubes : lumaCubes + 2 * (WIDTH / 16) * (HEIGHT / 16);
+		// The red square of the color video is flat, so its 4 luma and 2 chroma cubes are constant in the first slab too.
+		final int constantCubes = grayscale ? 0 : 6;
+		assertTrue(output.toString().contains("cubes not transformed: " + ((slabs - 1) * cubesPerSlab + constantCubes)), output.toString());
+		
+		final byte[] decoded = decode(encoded);
+		assertEquals(video.length, decoded.length);
+		assertTrue(psnr(video, decoded) > (grayscale ? 35 : 30), "PSNR: " + psnr(video, decoded));
+		// The skipped cubes reuse the coefficients of the previous slab, so all the decoded frames are equal.
+		final int frameSize = video.length / FRAMES;
+		for (int frame = 1; frame < FRAMES; frame++) {
+			assertArrayEquals(Arrays.copyOf(decoded, frameSize), Arrays.copyOfRange(decoded, frame * frameSize, (frame + 1) * frameSize), "Frame " + frame);
+		}
+	}
+	
+	@Test
+	public void transformsDecodeTheSameVideo() throws Exception {
+		final File encoded = encode(grayscaleVideo());
+		final byte[] fast = decode(encoded, "-transform", "fast");
+		final byte[] reference = decode(encoded, "-transform", "reference");
+		final byte[] single = decode(encoded, "-transform", "float");
+		for (int index = 0; index < fast.length; index++) {
+			assertTrue(Math.abs((fast[index] & 0xFF) - (reference[index] & 0xFF)) <= 1, "Pixel " + index);
+			assertTrue(Math.abs((fast[index] & 0xFF) - (single[index] & 0xFF)) <= 1, "Pixel " + index);
+		}
+	}
+	
+	@Test
+	public void incompleteContainerIsRejected() throws Exception {
+		final File encoded = encode(grayscaleVideo());
+		final byte[] data = Files.readAllBytes(encoded.toPath());
+		// Without the index, as left by an encoding that failed.
+		final File truncated = directory.resolve("truncated.3dct").toFile();
+		Files.write(truncated.toPath(), Arrays.copyOf(data, data.length / 2));
+		assertThrows(IOException.class, () -> new ContainerReader(truncated).close());
+	}
+	
+	@Test
+	public void failedSlabTaskFailsTheEncoder() {
+		final ContainerHeader header = new ContainerHeader();
+		header.width = WIDTH;
+		header.height = HEIGHT;
+		header.cubeWidth = 8;
+		header.cubeHeight = 8;
+		header.cubeDepth = CUBE_DEPTH;
+		header.quantizer = 5;
+		final SlabEncoder slabEncoder = new SlabEncoder(header, "fast");
+		// The pixels of a single frame instead of a whole slab, so the row tasks fail.
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		final short[] coefficients = new short[WIDTH * HEIGHT * CUBE_DEPTH];
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				assertThrows(ArrayIndexOutOfBoundsException.class, () -> slabEncoder.encode(pixels, null, coefficients, null, executor));
+			});
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@ParameterizedTest
+	@CsvSource({ "0, 20", "8, 8", "9, 3", "16, 100", "0, 9" })
+	public void partialDecodeMatchesFullDecode(final int start, final int frames) throws Exception {
+		final File encoded = encode(grayscaleVideo());
+		final byte[] full = decode(encoded);
+		final byte[] partial = decode(encoded, "-start", Integer.toString(start), "-frames", Integer.toString(frames));
+		// Whole chunks are decoded, from the one holding the first requested frame.
+		final int firstFrame = start / CUBE_DEPTH * CUBE_DEPTH;
+		final int lastFrame = Math.min(firstFrame + (frames + CUBE_DEPTH - 1) / CUBE_DEPTH * CUBE_DEPTH, FRAMES);
+		assertArrayEquals(Arrays.copyOfRange(full, firstFrame * WIDTH * HEIGHT, lastFrame * WIDTH * HEIGHT), partial);
+	}
+	
+	private byte[] roundTrip(final byte[] video, final String... options) throws Exception {
+		return decode(encode(video, options));
+	}
+	
+	private File encode(final byte[] video, final String... options) throws Exception {
+		final File input = Files.createTempFile(directory, "video", ".raw").toFile();
+		final File output = Files.createTempFile(directory, "video", ".3dct").toFile();
+		Files.write(input.toPath(), video);
+		final String[] arguments = { input.getPath(), output.getPath(), Integer.toString(WIDTH), Integer.toString(HEIGHT), Integer.toString(FRAMES) };
+		Encoder.main(concat(arguments, options));
+		return output;
+	}
+	
+	private byte[] decode(final File encoded, final String... options) throws Exception {
+		final File output = Files.createTempFile(directory, "decoded", ".raw").toFile();
+		final String[] arguments = { encoded.getPath(), output.getPath() };
+		Decoder.main(concat(arguments, options));
+		return Files.readAllBytes(output.toPath());
+	}
+	
+	private static String[] concat(final String[] arguments, final String[] options) {
+		final String[] result = Arrays.copyOf(arguments, arguments.length + options.length);
+		System.arraycopy(options, 0, result, arguments.length, options.length);
+		return result;
+	}
+	
+	/**
+	 * @return Frames with a moving gradient, a moving square and a small amount of noise.
+	 */
+	private static byte[] grayscaleVideo() {
+		final Random random = new Random(1);
+		final byte[] pixels = new byte[WIDTH * HEIGHT * FRAMES];
+		for (int frame = 0, index = 0; frame < FRAMES; frame++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++, index++) {
+					int value = 40 + (x + frame * 2) * 2 + y;
+					if (x >= frame && x < frame + 16 && y >= 16 && y < 32) {
+						value = 220;
+					}
+					pixels[index] = (byte) Math.max(0, Math.min(255, value + random.nextInt(5) - 2));
+				}
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * @return Interleaved RGB frames with smooth color gradients and a moving red square.
+	 */
+	private static byte[] colorVideo() {
+		final byte[] pixels = new byte[WIDTH * HEIGHT * FRAMES * 3];
+		for (int frame = 0, index = 0; frame < FRAMES; frame++) {
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++, index += 3) {
+					final boolean square = x >= 2 * frame && x < 2 * frame + 16 && y >= 16 && y < 32;
+					pixels[index] = (byte) (square ? 230 : 30 + 3 * x);
+					pixels[index + 1] = (byte) (square ? 20 : 40 + 4 * y);
+					pixels[index + 2] = (byte) (square ? 30 : 200 - 2 * x - frame);
+				}
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * @return The first frame of a video, repeated in every frame.
+	 */
+	private static byte[] staticVideo(final byte[] pixels) {
+		final int frameSize = pixels.length / FRAMES;
+		for (int frame = 1; frame < FRAMES; frame++) {
+			System.arraycopy(pixels, 0, pixels, frame * frameSize, frameSize);
+		}
+		return pixels;
+	}
+	
+	private static double psnr(final byte[] expected, final byte[] actual) {
+		double squaredError = 0;
+		for (int index = 0; index < expected.length; index++) {
+			final int difference = (expected[index] & 0xFF) - (actual[index] & 0xFF);
+			squaredError += difference * difference;
+		}
+		return 10 * Math.log10(255.0d * 255.0d * expected.length / squaredError);
+	}
+	
+}
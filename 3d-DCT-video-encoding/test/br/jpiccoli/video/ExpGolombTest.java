@@ -0,0 +1,164 @@
+package br.jpiccoli.video;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the Exp-Golomb writer against a bit by bit coder, and that the reader restores the written values.
+ *
+ * @author Juliano Piccoli
+ */
+public class ExpGolombTest {
+
+	private static final int VALUES = 20000;
+	
+	@Test
+	public void writerOutputMatchesBitByBitCoding() throws IOException {
+		final int[] values = values();
+		final StringBuilder expectedBits = new StringBuilder();
+		final ExpGolombWriter writer = new ExpGolombWriter();
+		writer.setOutput(new byte[16]);
+		for (int index = 0; index < values.length; index++) {
+			if (index % 100 == 0) {
+				// Runs of zeroes are written at once.
+				for (int zero = 0; zero < index % 300; zero++) {
+					appendCode(expectedBits, 0);
+				}
+				writer.writeZeroes(index % 300);
+			}
+			appendCode(expectedBits, values[index] <= 0 ? -2L * values[index] : 2L * values[index] - 1);
+			writer.writeValue(values[index]);
+		}
+		final int length = writer.finish();
+		// The coded data always ends with the byte that follows the last written bit.
+		assertEquals(expectedBits.length() / 8 + 1, length);
+		assertArrayEquals(toBytes(expectedBits, length), Arrays.copyOf(writer.getOutput(), length));
+	}
+	
+	@Test
+	public void streamOutputMatchesVectorOutput() throws IOException {
+		final int[] values = values();
+		final ExpGolombWriter writer = new ExpGolombWriter();
+		writer.setOutput(new byte[16]);
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final ExpGolombWriter streamWriter = new ExpGolombWriter();
+		streamWriter.setOutput(stream, 64);
+		for (int value : values) {
+			writer.writeValue(value);
+			streamWriter.writeValue(value);
+		}
+		final int length = writer.finish();
+		streamWriter.finish();
+		assertArrayEquals(Arrays.copyOf(writer.getOutput(), length), stream.toByteArray());
+	}
+	
+	@Test
+	public void readerRestoresWrittenValues() throws IOException {
+		final int[] values = values();
+		final ExpGolombWriter writer = new ExpGolombWriter();
+		writer.setOutput(new byte[16]);
+		for (int index = 0; index < values.length; index++) {
+			if (index % 100 == 0) {
+				writer.writeZeroes(index % 300);
+			}
+			writer.writeValue(values[index]);
+		}
+		final int length = writer.finish();
+		final byte[] data = Arrays.copyOf(writer.getOutput(), length);
+		
+		final ExpGolombReader reader = new ExpGolombReader();
+		reader.setInput(data);
+		final ExpGolombReader streamReader = new ExpGolombReader();
+		streamReader.setInput(new ByteArrayInputStream(data), 64);
+		final ExpGolombReader tableReader = new ExpGolombReader();
+		tableReader.setInput(data);
+		final int[] zeroes = new int[300];
+		final int[] value = new int[1];
+		for (int index = 0; index < values.length; index++) {
+			if (index % 100 == 0) {
+				for (int zero = 0; zero < index % 300; zero++) {
+					assertEquals(0, reader.readValue());
+					assertEquals(0, streamReader.readValue());
+				}
+				// The runs of zeroes take the fast path of the lookup table.
+				Arrays.fill(zeroes, -1);
+				tableReader.readValues(zeroes, index % 300);
+				for (int zero = 0; zero < index % 300; zero++) {
+					assertEquals(0, zeroes[zero]);
+				}
+			}
+			assertEquals(values[index], reader.readValue());
+			assertEquals(values[index], streamReader.readValue());
+			tableReader.readValues(value, 1);
+			assertEquals(values[index], value[0]);
+		}
+	}
+	
+	@Test
+	public void unsignedValuesRoundTrip() throws IOException {
+		final int[] values = values();
+		final StringBuilder expectedBits = new StringBuilder();
+		final ExpGolombWriter writer = new ExpGolombWriter();
+		writer.setOutput(new byte[16]);
+		for (int value : values) {
+			// As the lengths of the runs of zeroes of the run-length coding.
+			appendCode(expectedBits, Math.abs(value));
+			writer.writeUnsigned(Math.abs(value));
+		}
+		final int length = writer.finish();
+		assertArrayEquals(toBytes(expectedBits, length), Arrays.copyOf(writer.getOutput(), length));
+		
+		final ExpGolombReader reader = new ExpGolombReader();
+		reader.setInput(Arrays.copyOf(writer.getOutput(), length));
+		for (int value : values) {
+			assertEquals(Math.abs(value), reader.readUnsigned());
+		}
+	}
+	
+	/**
+	 * @return Mostly small values, as the quantized coefficients, and some values with long codes.
+	 */
+	private static int[] values() {
+		final Random random = new Random(1);
+		final int[] values = new int[VALUES];
+		for (int index = 0; index < values.length; index++) {
+			if (index % 50 == 0) {
+				values[index] = random.nextInt(1 << 20) - (1 << 19);
+			} else {
+				values[index] = random.nextInt(9) - 4;
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Appends the unsigned Exp-Golomb code of a value: the binary representation of value + 1,
+	 * preceded by as many zeroes as it has bits after the first one.
+	 */
+	private static void appendCode(final StringBuilder bits, final long value) {
+		final String binary = Long.toBinaryString(value + 1);
+		for (int zero = 1; zero < binary.length(); zero++) {
+			bits.append('0');
+		}
+		bits.append(binary);
+	}
+	
+	private static byte[] toBytes(final StringBuilder bits, final int length) {
+		final byte[] bytes = new byte[length];
+		for (int bit = 0; bit < bits.length(); bit++) {
+			if (bits.charAt(bit) == '1') {
+				bytes[bit / 8] |= 0x80 >>> (bit % 8);
+			}
+		}
+		return bytes;
+	}
+	
+}
@@ -0,0 +1,260 @@
+package br.jpiccoli.video.dct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks the fast and single precision transforms against the reference DCT and inverse DCT, for several
+ * cube dimensions and both layouts of the vectors.
+ *
+ * @author Juliano Piccoli
+ */
+public class TransformTest {
+
+	private static final int FRAME_WIDTH = 16;
+	private static final int FRAME_HEIGHT = 16;
+	private static final double TOLERANCE = 1E-6;
+	private static final double FLOAT_TOLERANCE = 1E-2;
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "4x4x4", "8x4x2" })
+	public void referenceDCTMatchesDefinition(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		final double[] actual = new double[pixels.length];
+		new DCT(pixels, actual, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		
+		// The orthonormal DCT-II of each cube, computed coefficient by coefficient.
+		final double[] expected = new double[pixels.length];
+		final int frames = pixels.length / (FRAME_WIDTH * FRAME_HEIGHT);
+		for (int z = 0; z < frames; z += dimensions[2]) {
+			for (int y = 0; y < FRAME_HEIGHT; y += dimensions[1]) {
+				for (int x = 0; x < FRAME_WIDTH; x += dimensions[0]) {
+					for (int w = 0; w < dimensions[2]; w++) {
+						for (int v = 0; v < dimensions[1]; v++) {
+							for (int u = 0; u < dimensions[0]; u++) {
+								double sum = 0;
+								for (int k = 0; k < dimensions[2]; k++) {
+									for (int i = 0; i < dimensions[1]; i++) {
+										for (int j = 0; j < dimensions[0]; j++) {
+											sum += pixels[position(x + j, y + i, z + k)] * basis(u, j, dimensions[0]) * basis(v, i, dimensions[1]) * basis(w, k, dimensions[2]);
+										}
+									}
+								}
+								expected[position(x + u, y + v, z + w)] = sum;
+							}
+						}
+					}
+				}
+			}
+		}
+		assertVectorsEqual(expected, actual, TOLERANCE);
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "4x4x4", "8x8x16", "8x4x2" })
+	public void fastDCTMatchesReference(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		final double[] expected = new double[pixels.length];
+		final double[] actual = new double[pixels.length];
+		new DCT(pixels, expected, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		new FastDCT(pixels, actual, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		assertVectorsEqual(expected, actual, TOLERANCE);
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "4x4x4", "8x8x16", "8x4x2" })
+	public void fastInverseDCTMatchesReference(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		final double[] coefficients = new double[pixels.length];
+		new DCT(pixels, coefficients, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		final double[] expected = new double[pixels.length];
+		final double[] actual = new double[pixels.length];
+		new InverseDCT(coefficients, expected, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		new FastInverseDCT(coefficients, actual, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		assertVectorsEqual(expected, actual, TOLERANCE);
+		// The pixels are in the [0, 255] range, so the inverse transform restores them.
+		assertVectorsEqual(pixels, actual, TOLERANCE);
+		new FloatInverseDCT(coefficients, actual, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		assertVectorsEqual(expected, actual, FLOAT_TOLERANCE);
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "8x4x2" })
+	public void fastInverseDCTRestoresDCOnlyCubes(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		// Constant cubes only have the DC coefficient, and take the shortcut of the inverse transform.
+		for (int index = 0; index < pixels.length; index++) {
+			final int x = index % FRAME_WIDTH / dimensions[0];
+			final int y = index / FRAME_WIDTH % FRAME_HEIGHT / dimensions[1];
+			final int z = index / (FRAME_WIDTH * FRAME_HEIGHT) / dimensions[2];
+			pixels[index] = (x + y + z) % 2 == 0 ? 0 : 200;
+		}
+		final double[] coefficients = new double[pixels.length];
+		new DCT(pixels, coefficients, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		final double[] actual = new double[pixels.length];
+		new FastInverseDCT(coefficients, actual, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		assertVectorsEqual(pixels, actual, TOLERANCE);
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "8x4x2" })
+	public void referenceTransformsCanRunAgain(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		final double[] coefficients = new double[pixels.length];
+		final double[] restored = new double[pixels.length];
+		final Transform dct = new DCT(pixels, coefficients, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]);
+		final Transform inverseDCT = new InverseDCT(coefficients, restored, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]);
+		dct.run();
+		inverseDCT.run();
+		
+		// The worker threads keep their sums and vectors between runs, which must not leak into the next slab.
+		final double[] nextPixels = new double[pixels.length];
+		for (int index = 0; index < pixels.length; index++) {
+			nextPixels[index] = 255 - pixels[index];
+			pixels[index] = nextPixels[index];
+		}
+		dct.run();
+		inverseDCT.run();
+		final double[] expected = new double[pixels.length];
+		new DCT(nextPixels, expected, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		assertVectorsEqual(expected, coefficients, TOLERANCE);
+		assertVectorsEqual(nextPixels, restored, TOLERANCE);
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "4x4x4", "8x8x16", "8x4x2" })
+	public void floatBlockTransformMatchesReference(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		final double[] expected = new double[pixels.length];
+		new DCT(pixels, expected, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		
+		final FloatBlockTransform transform = FloatBlockTransform.create(dimensions[0], dimensions[1], dimensions[2]);
+		final float[] block = new float[transform.getCubeSize()];
+		final double[] actual = new double[pixels.length];
+		for (int z = 0; z < pixels.length / (FRAME_WIDTH * FRAME_HEIGHT); z += dimensions[2]) {
+			for (int y = 0; y < FRAME_HEIGHT; y += dimensions[1]) {
+				for (int x = 0; x < FRAME_WIDTH; x += dimensions[0]) {
+					copyBlock(pixels, block, x, y, z, dimensions, true);
+					transform.forward(block, 0);
+					copyBlock(actual, block, x, y, z, dimensions, false);
+				}
+			}
+		}
+		assertVectorsEqual(expected, actual, FLOAT_TOLERANCE);
+	}
+	
+	@ParameterizedTest
+	@ValueSource(strings = { "8x8x8", "4x4x4", "8x8x16" })
+	public void tiledLayoutMatchesRaster(final String cube) throws InterruptedException {
+		final int[] dimensions = parse(cube);
+		final double[] pixels = pixels(dimensions[2]);
+		final TiledLayout tiledLayout = new TiledLayout(FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]);
+		final double[] tiledPixels = new double[pixels.length];
+		tiledLayout.fromRaster(pixels, tiledPixels);
+		
+		final double[] raster = new double[pixels.length];
+		new FastDCT(pixels, raster, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]).run();
+		final double[] tiled = new double[pixels.length];
+		final Transform tiledDCT = new DCT(tiledPixels, tiled, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]);
+		tiledDCT.setLayout(Transform.Layout.TILED);
+		tiledDCT.run();
+		final double[] converted = new double[pixels.length];
+		tiledLayout.toRaster(tiled, converted);
+		assertVectorsEqual(raster, converted, TOLERANCE);
+		
+		final double[] inverse = new double[pixels.length];
+		final Transform tiledInverseDCT = new FastInverseDCT(tiled, inverse, FRAME_WIDTH, FRAME_HEIGHT, dimensions[0], dimensions[1], dimensions[2]);
+		tiledInverseDCT.setLayout(Transform.Layout.TILED);
+		tiledInverseDCT.run();
+		assertVectorsEqual(tiledPixels, inverse, TOLERANCE);
+	}
+	
+	/**
+	 * Copies a cube between its position inside the frames and a contiguous block, in the order x, y, z.
+	 */
+	private static void copyBlock(final double[] frames, final float[] block, final int x, final int y, final int z, final int[] dimensions, final boolean toBlock) {
+		int index = 0;
+		for (int k = 0; k < dimensions[2]; k++) {
+			for (int i = 0; i < dimensions[1]; i++) {
+				for (int j = 0; j < dimensions[0]; j++, index++) {
+					final int position = ((z + k) * FRAME_HEIGHT + y + i) * FRAME_WIDTH + x + j;
+					if (toBlock) {
+						block[index] = (float) frames[position];
+					} else {
+						frames[position] = block[index];
+					}
+				}
+			}
+		}
+	}
+	
+	@ParameterizedTest
+	@EnumSource(Transform.Scheduling.class)
+	public void failedTaskFailsTheTransform(final Transform.Scheduling scheduling) {
+		final double[] pixels = pixels(8);
+		final Transform transform = new Transform(pixels, new double[pixels.length], FRAME_WIDTH, FRAME_HEIGHT, 8, 8, 8) {
+			@Override
+			protected void apply(final int x, final int y, final int z) {
+				if (x == 8 && y == 8) {
+					throw new IllegalStateException("Failed block");
+				}
+			}
+		};
+		transform.setScheduling(scheduling);
+		// The exception reaches the caller instead of leaving it waiting for the failed task.
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			assertThrows(IllegalStateException.class, () -> transform.run(2));
+		});
+	}
+	
+	private static int position(final int x, final int y, final int z) {
+		return (z * FRAME_HEIGHT + y) * FRAME_WIDTH + x;
+	}
+	
+	/**
+	 * @return Value of the orthonormal DCT-II basis function of the given frequency at a position.
+	 */
+	private static double basis(final int frequency, final int position, final int length) {
+		final double scale = frequency == 0 ? Math.sqrt(1.0d / length) : Math.sqrt(2.0d / length);
+		return scale * Math.cos(Math.PI * (position + 0.5d) * frequency / length);
+	}
+	
+	private static int[] parse(final String cube) {
+		final String[] dimensions = cube.split("x");
+		return new int[] { Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), Integer.parseInt(dimensions[2]) };
+	}
+	
+	/**
+	 * @return Two slabs of random 8 bits pixels.
+	 */
+	private static double[] pixels(final int cubeDepth) {
+		final Random random = new Random(cubeDepth);
+		final double[] pixels = new double[FRAME_WIDTH * FRAME_HEIGHT * cubeDepth * 2];
+		for (int index = 0; index < pixels.length; index++) {
+			pixels[index] = random.nextInt(256);
+		}
+		return pixels;
+	}
+	
+	private static void assertVectorsEqual(final double[] expected, final double[] actual, final double tolerance) {
+		for (int index = 0; index < expected.length; index++) {
+			assertEquals(expected[index], actual[index], tolerance, "Value " + index);
+		}
+	}
+	
+}